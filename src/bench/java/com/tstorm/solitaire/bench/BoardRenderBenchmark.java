@@ -0,0 +1,99 @@
+package com.tstorm.solitaire.bench;
+
+import com.tstorm.solitaire.BoardRenderer;
+import com.tstorm.solitaire.pieces.BitBoard;
+import com.tstorm.solitaire.pieces.Board;
+import com.tstorm.solitaire.pieces.Peg;
+import j2html.tags.Tag;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static j2html.TagCreator.*;
+
+/**
+ * Renders the board message the way {@code App.createBoard} used to, with j2html and a
+ * {@link JSONObject}, and with the prebuilt {@link BoardRenderer} template: the starting
+ * board every connect sends, and a corpus of positions from later in games. Both paths must
+ * produce the same text. Run with {@code -prof gc} to compare allocation too.
+ * <p>
+ * Run with {@code java -cp target/classes:target/bench-classes:<dependencies> org.openjdk.jmh.Main BoardRenderBenchmark}
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoardRenderBenchmark {
+    private Board start;
+    private Board[] boards;
+
+    @Setup
+    public void setUp() throws JSONException {
+        start = new Board(BitBoard.HOLES);
+        long[] positions = Positions.corpus(64, 1, 20, 42);
+        boards = new Board[positions.length];
+        for (int i = 0; i < positions.length; i++) {
+            boards[i] = new Board(positions[i]);
+            if (!j2html(boards[i]).equals(BoardRenderer.CURRENT.render(boards[i]))) {
+                throw new IllegalStateException("Renderings differ for " + Long.toHexString(positions[i]));
+            }
+        }
+    }
+
+    @Benchmark
+    public String j2htmlStart() throws JSONException {
+        return j2html(start);
+    }
+
+    @Benchmark
+    public String templateStart() {
+        return BoardRenderer.CURRENT.render(start);
+    }
+
+    @Benchmark
+    public void j2htmlCorpus(Blackhole blackhole) throws JSONException {
+        for (Board b : boards) {
+            blackhole.consume(j2html(b));
+        }
+    }
+
+    @Benchmark
+    public void templateCorpus(Blackhole blackhole) {
+        for (Board b : boards) {
+            blackhole.consume(BoardRenderer.CURRENT.render(b));
+        }
+    }
+
+    private static String j2html(Board b) throws JSONException {
+        JSONObject board = new JSONObject();
+        board.put("table", table().with(
+                createRows(b.array())
+        ));
+        return String.valueOf(board);
+    }
+
+    private static List<Tag> createRows(Peg[][] board) {
+        return Arrays.stream(board).map(row ->
+            tr().with(
+                createColumn(row)
+            )
+        ).collect(Collectors.toList());
+    }
+
+    private static List<Tag> createColumn(Peg[] row) {
+        return Arrays.stream(row).map(column ->
+            td().withId("peg" + column.getId())
+                .withClass(column.isEnabled() && !column.isDiscarded() ? "on" : "off")
+                .attr("onclick", "select(this)")
+                .with(text(String.format("%d", column.getId())))
+        ).collect(Collectors.toList());
+    }
+}
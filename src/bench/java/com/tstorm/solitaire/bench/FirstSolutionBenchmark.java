@@ -0,0 +1,63 @@
+package com.tstorm.solitaire.bench;
+
+import com.tstorm.solitaire.endgame.EndgameDatabase;
+import com.tstorm.solitaire.moves.DepthFirstSolver;
+import com.tstorm.solitaire.moves.MoveOrdering;
+import com.tstorm.solitaire.moves.Pruning;
+import com.tstorm.solitaire.moves.Search;
+import com.tstorm.solitaire.moves.SolvabilityOracle;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time for a {@link DepthFirstSolver} to find the first winning line of each solvable
+ * position in a fixed corpus, per {@link MoveOrdering} strategy. Each invocation starts from
+ * an empty oracle and a fresh ordering, and pruning is off so only the ordering differs.
+ * <p>
+ * Run with {@code java -cp target/classes:target/bench-classes:<dependencies> org.openjdk.jmh.Main FirstSolutionBenchmark}
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class FirstSolutionBenchmark {
+    @Param({"NATURAL", "CENTER_BIAS", "HISTORY", "KILLER"})
+    public MoveOrdering.Strategy strategy;
+
+    private long[] positions;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        long[] corpus = Positions.corpus(64, 10, 12, 42);
+        DepthFirstSolver solver = solver(MoveOrdering.Strategy.CENTER_BIAS);
+        int solvable = 0;
+        for (long pegs : corpus) {
+            if (solver.canWin(pegs)) {
+                corpus[solvable++] = pegs;
+            }
+        }
+        positions = Arrays.copyOf(corpus, solvable);
+    }
+
+    @Benchmark
+    public int firstSolution() {
+        DepthFirstSolver solver = solver(strategy);
+        int wins = 0;
+        for (long pegs : positions) {
+            if (solver.canWin(pegs)) {
+                wins++;
+            }
+        }
+        return wins;
+    }
+
+    private static DepthFirstSolver solver(MoveOrdering.Strategy strategy) {
+        return new DepthFirstSolver(new SolvabilityOracle(64), EndgameDatabase.EMPTY,
+                new Pruning(EnumSet.noneOf(Pruning.Heuristic.class)), Search.unbounded(), MoveOrdering.create(strategy));
+    }
+}
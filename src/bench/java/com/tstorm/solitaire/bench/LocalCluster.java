@@ -0,0 +1,104 @@
+package com.tstorm.solitaire.bench;
+
+import com.tstorm.solitaire.moves.MoveEvaluator;
+import com.tstorm.solitaire.pieces.Board;
+import com.tstorm.solitaire.server.Master;
+import com.tstorm.solitaire.server.Slave;
+import com.tstorm.solitaire.server.WorkScheduler;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A master in this JVM and slave processes on consecutive local ports, for measuring the
+ * cluster without real hardware. Slaves inherit every {@code solitaire.*} system property
+ * set here when they start, and each cluster starts with an empty master oracle.
+ */
+public class LocalCluster implements AutoCloseable {
+    public static final int FIRST_PORT = 5300;
+
+    private final List<Process> processes = new ArrayList<>();
+    private final Master master;
+
+    public LocalCluster(int slaves, WorkScheduler.Mode mode) throws IOException, InterruptedException {
+        MoveEvaluator.getOracle().clear();
+        for (int i = 0; i < slaves; i++) {
+            processes.add(startSlave(FIRST_PORT + i));
+        }
+        master = new Master(mode).startListening();
+        for (int i = 0; i < slaves; i++) {
+            master.addSlave(connect(FIRST_PORT + i));
+        }
+    }
+
+    /**
+     * Suggests a move for each position in turn and returns the milliseconds each took.
+     */
+    public long[] time(long[] positions) {
+        long[] millis = new long[positions.length];
+        for (int i = 0; i < positions.length; i++) {
+            long start = System.nanoTime();
+            master.evaluate(new Board(positions[i]));
+            millis[i] = (System.nanoTime() - start) / 1000000;
+        }
+        return millis;
+    }
+
+    @Override
+    public void close() {
+        master.shutdown();
+        // slaves serve masters until killed
+        for (Process p : processes) {
+            p.destroy();
+            try {
+                p.waitFor();
+            } catch (InterruptedException e) {
+                // the rest are still destroyed, just not waited for
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public static String report(String name, long[] millis) {
+        long total = 0;
+        StringBuilder times = new StringBuilder();
+        for (long m : millis) {
+            total += m;
+            times.append(' ').append(m);
+        }
+        return String.format("%s: %d ms total, per position (ms):%s", name, total, times);
+    }
+
+    private static Process startSlave(int port) throws IOException {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        List<String> command = new ArrayList<>();
+        command.add(java);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith("solitaire.")) {
+                command.add("-D" + name + "=" + System.getProperty(name));
+            }
+        }
+        command.add(Slave.class.getName());
+        command.add(String.valueOf(port));
+        return new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.INHERIT)
+                .start();
+    }
+
+    private static Slave connect(int port) throws IOException, InterruptedException {
+        while (true) {
+            try {
+                return new Slave(InetAddress.getLoopbackAddress(), port);
+            } catch (ConnectException e) {
+                Thread.sleep(200);
+            }
+        }
+    }
+}
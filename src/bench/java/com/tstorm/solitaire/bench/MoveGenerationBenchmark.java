@@ -0,0 +1,92 @@
+package com.tstorm.solitaire.bench;
+
+import com.tstorm.solitaire.moves.Move;
+import com.tstorm.solitaire.pieces.Board;
+import com.tstorm.solitaire.pieces.MoveTable;
+import com.tstorm.solitaire.pieces.Peg;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the original {@code Optional<Peg>} neighbor walk, the {@link Move} list API and
+ * the packed {@link MoveTable} generator over the same positions.
+ * <p>
+ * Run with {@code java -cp target/classes:target/bench-classes:<dependencies> org.openjdk.jmh.Main MoveGenerationBenchmark}
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MoveGenerationBenchmark {
+    private Board[] boards;
+    private long[] positions;
+    private int[] buffer;
+
+    @Setup
+    public void setUp() {
+        positions = Positions.corpus(256, 1, 20, 42);
+        boards = new Board[positions.length];
+        for (int i = 0; i < positions.length; i++) {
+            boards[i] = new Board(positions[i]);
+        }
+        buffer = new int[MoveTable.CURRENT.size()];
+    }
+
+    @Benchmark
+    public void pegNeighbors(Blackhole blackhole) {
+        for (Board b : boards) {
+            blackhole.consume(pegNeighborMoves(b));
+        }
+    }
+
+    @Benchmark
+    public void moveList(Blackhole blackhole) {
+        for (Board b : boards) {
+            blackhole.consume(b.getMoves());
+        }
+    }
+
+    @Benchmark
+    public void packedTable(Blackhole blackhole) {
+        MoveTable table = MoveTable.CURRENT;
+        for (long pegs : positions) {
+            int count = table.generate(pegs, buffer);
+            for (int i = 0; i < count; i++) {
+                blackhole.consume(buffer[i]);
+            }
+        }
+    }
+
+    // the Board.getMoves() implementation this table replaced
+    private static List<Move> pegNeighborMoves(Board b) {
+        List<Move> moves = new ArrayList<>();
+        for (Peg[] row : b.array()) {
+            for (Peg p : row) {
+                if (!b.pegIsEmpty(p.getId())) {
+                    continue;
+                }
+                for (int direction = 0; direction < 4; direction++) {
+                    Optional<Peg> firstNeighbor = p.getNeighbors().get(direction);
+                    if (isValidPeg(firstNeighbor)) {
+                        Optional<Peg> secondNeighbor = firstNeighbor.get().getNeighbors().get(direction);
+                        if (isValidPeg(secondNeighbor)) {
+                            moves.add(new Move(secondNeighbor.get(), firstNeighbor.get(), p));
+                        }
+                    }
+                }
+            }
+        }
+        return moves;
+    }
+
+    private static boolean isValidPeg(Optional<Peg> peg) {
+        return peg.isPresent() && !peg.get().isDiscarded() && peg.get().isEnabled();
+    }
+}
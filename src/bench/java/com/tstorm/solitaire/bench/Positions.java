@@ -0,0 +1,52 @@
+package com.tstorm.solitaire.bench;
+
+import com.tstorm.solitaire.pieces.BitBoard;
+import com.tstorm.solitaire.pieces.MoveTable;
+
+import java.util.Random;
+
+/**
+ * Fixed, seeded corpus of positions for the benchmarks, built by random play from the
+ * board with only the center hole empty.
+ */
+public final class Positions {
+    private Positions() {
+    }
+
+    public static long opening() {
+        return BitBoard.HOLES & ~BitBoard.bit(BitBoard.CENTER);
+    }
+
+    /**
+     * The opening followed by positions a few jumps into the game, where suggestions take
+     * the longest.
+     */
+    public static long[] suggestionCorpus(int size) {
+        long[] positions = new long[size];
+        positions[0] = opening();
+        System.arraycopy(corpus(size - 1, 1, 4, 42), 0, positions, 1, size - 1);
+        return positions;
+    }
+
+    public static long[] corpus(int size, int minJumps, int maxJumps, long seed) {
+        Random random = new Random(seed);
+        MoveTable table = MoveTable.CURRENT;
+        int[] moves = new int[table.size()];
+        long[] positions = new long[size];
+        int i = 0;
+        while (i < size) {
+            long pegs = opening();
+            int jumps = minJumps + random.nextInt(maxJumps - minJumps + 1);
+            int made = 0;
+            int count;
+            while (made < jumps && (count = table.generate(pegs, moves)) > 0) {
+                pegs = MoveTable.jump(pegs, moves[random.nextInt(count)]);
+                made++;
+            }
+            if (made == jumps) {
+                positions[i++] = pegs;
+            }
+        }
+        return positions;
+    }
+}
@@ -0,0 +1,27 @@
+package com.tstorm.solitaire.bench;
+
+import com.tstorm.solitaire.server.SolverPool;
+import com.tstorm.solitaire.server.WorkScheduler;
+
+/**
+ * End to end suggestion latency of a {@link LocalCluster} for each
+ * {@link WorkScheduler.Mode} over the same positions. Every mode starts from fresh slaves
+ * and an empty master oracle.
+ * <p>
+ * Run with {@code java -cp target/classes:target/bench-classes:<dependencies> com.tstorm.solitaire.bench.SchedulerLatency [slaves] [positions] [parallelism]}
+ */
+public class SchedulerLatency {
+    public static void main(String[] args) throws Exception {
+        int slaves = args.length > 0 ? Integer.parseInt(args[0]) : 2;
+        int count = args.length > 1 ? Integer.parseInt(args[1]) : 6;
+        int parallelism = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+        System.setProperty(SolverPool.PARALLELISM_PROPERTY, String.valueOf(parallelism));
+        long[] positions = Positions.suggestionCorpus(count);
+        for (WorkScheduler.Mode mode : WorkScheduler.Mode.values()) {
+            try (LocalCluster cluster = new LocalCluster(slaves, mode)) {
+                System.out.println(LocalCluster.report(mode.name(), cluster.time(positions)));
+            }
+        }
+        System.exit(0);
+    }
+}
@@ -0,0 +1,180 @@
+package com.tstorm.solitaire.bench;
+
+import com.tstorm.solitaire.server.Controller;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.annotations.OnWebSocketConnect;
+import org.eclipse.jetty.websocket.api.annotations.OnWebSocketMessage;
+import org.eclipse.jetty.websocket.api.annotations.WebSocket;
+import org.eclipse.jetty.websocket.client.WebSocketClient;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static spark.Spark.*;
+
+/**
+ * Plays many games at once against one game server, with no slaves, and reports how long
+ * moves and suggestions take as the number of sessions grows. Each player discards the
+ * center peg, makes a fixed first jump, then asks for a suggestion and plays one of the
+ * suggested moves, a different one per player where there is a choice, for a number of
+ * turns. Players share the master's oracle, as real games do, so later players find some
+ * positions already proven. Suggestions stream in, so both the time to the first winning move
+ * and the time to the end of the search are reported.
+ * <p>
+ * Run with {@code java -cp target/classes:target/bench-classes:<dependencies> com.tstorm.solitaire.bench.SessionLoad [sessions,...] [turns]}
+ */
+public class SessionLoad {
+    private static final int PORT = 4597;
+    private static final long REPLY_SECONDS = 120;
+
+    @WebSocket
+    public static class Player {
+        private final BlockingQueue<String> replies = new LinkedBlockingQueue<>();
+        private final List<Long> moves = new ArrayList<>();
+        private final List<Long> firstSuggestions = new ArrayList<>();
+        private final List<Long> suggestions = new ArrayList<>();
+        private volatile Session session;
+
+        @OnWebSocketConnect
+        public void onConnect(Session session) {
+            this.session = session;
+        }
+
+        @OnWebSocketMessage
+        public void onMessage(String message) {
+            replies.add(message);
+        }
+
+        private String send(String message, List<Long> latencies) throws IOException, InterruptedException {
+            long start = System.nanoTime();
+            session.getRemote().sendString(message);
+            String reply = reply(message);
+            latencies.add((System.nanoTime() - start) / 1000000);
+            return reply;
+        }
+
+        private String reply(String message) throws IOException, InterruptedException {
+            String reply = replies.poll(REPLY_SECONDS, TimeUnit.SECONDS);
+            if (reply == null) {
+                throw new IOException("No reply to " + message);
+            }
+            return reply;
+        }
+
+        /**
+         * The winning moves of the position, read until the search is complete.
+         */
+        private List<JSONArray> suggest() throws Exception {
+            long start = System.nanoTime();
+            session.getRemote().sendString("suggestion");
+            List<JSONArray> winning = new ArrayList<>();
+            while (true) {
+                JSONObject message = new JSONObject(reply("suggestion"));
+                long millis = (System.nanoTime() - start) / 1000000;
+                if (message.getString("type").equals("complete")) {
+                    suggestions.add(millis);
+                    return winning;
+                }
+                if (message.getBoolean("winning")) {
+                    if (winning.isEmpty()) {
+                        firstSuggestions.add(millis);
+                    }
+                    winning.add(message.getJSONArray("move"));
+                }
+            }
+        }
+
+        private void jump(int start, int end) throws IOException, InterruptedException {
+            send("peg" + start, moves);
+            send("peg" + end, moves);
+        }
+
+        void play(int player, int turns) throws Exception {
+            replies.take(); // the board
+            send("peg24", moves);
+            jump(10, 24);
+            for (int turn = 0; turn < turns; turn++) {
+                List<JSONArray> suggested = suggest();
+                if (suggested.isEmpty()) {
+                    return;
+                }
+                JSONArray move = suggested.get(player % suggested.size());
+                jump(move.getInt(0), move.getInt(1));
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String[] sessions = (args.length > 0 ? args[0] : "1,10,50,100").split(",");
+        int turns = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        port(PORT);
+        webSocket("/solitaire", new Controller());
+        init();
+        awaitInitialization();
+        WebSocketClient client = new WebSocketClient();
+        client.start();
+        for (String count : sessions) {
+            System.out.println(run(client, Integer.parseInt(count), turns));
+        }
+        client.stop();
+        stop();
+        System.exit(0);
+    }
+
+    private static String run(WebSocketClient client, int sessions, int turns) throws Exception {
+        List<Player> players = new ArrayList<>();
+        for (int i = 0; i < sessions; i++) {
+            Player player = new Player();
+            client.connect(player, new URI("ws://localhost:" + PORT + "/solitaire/")).get();
+            players.add(player);
+        }
+        ExecutorService executor = Executors.newCachedThreadPool();
+        List<Future<?>> games = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < sessions; i++) {
+            Player player = players.get(i);
+            int id = i;
+            games.add(executor.submit(() -> {
+                player.play(id, turns);
+                return null;
+            }));
+        }
+        for (Future<?> game : games) {
+            game.get();
+        }
+        long millis = (System.nanoTime() - start) / 1000000;
+        executor.shutdown();
+        List<Long> moves = new ArrayList<>();
+        List<Long> firstSuggestions = new ArrayList<>();
+        List<Long> suggestions = new ArrayList<>();
+        for (Player player : players) {
+            moves.addAll(player.moves);
+            firstSuggestions.addAll(player.firstSuggestions);
+            suggestions.addAll(player.suggestions);
+            player.session.close();
+        }
+        return String.format("%d sessions: %d ms; moves %s; first suggestion %s; suggestions %s",
+                sessions, millis, percentiles(moves), percentiles(firstSuggestions), percentiles(suggestions));
+    }
+
+    private static String percentiles(List<Long> millis) {
+        if (millis.isEmpty()) {
+            return "none";
+        }
+        Collections.sort(millis);
+        return String.format("p50 %d ms, p95 %d ms, max %d ms (%d)",
+                millis.get(millis.size() / 2), millis.get(millis.size() * 95 / 100), millis.get(millis.size() - 1),
+                millis.size());
+    }
+}
@@ -0,0 +1,30 @@
+package com.tstorm.solitaire.bench;
+
+import com.tstorm.solitaire.server.SolverPool;
+import com.tstorm.solitaire.server.WorkScheduler;
+
+/**
+ * Suggestion latency of a {@link LocalCluster} with and without sharing proven positions
+ * between nodes ({@code solitaire.sharing.enabled}). On a single core host the cluster's
+ * wall time is its total work.
+ * <p>
+ * Run with {@code java -cp target/classes:target/bench-classes:<dependencies> com.tstorm.solitaire.bench.SharedTableHarness [slaves] [positions] [parallelism]}
+ */
+public class SharedTableHarness {
+    private static final String SHARING_PROPERTY = "solitaire.sharing.enabled";
+
+    public static void main(String[] args) throws Exception {
+        int slaves = args.length > 0 ? Integer.parseInt(args[0]) : 2;
+        int count = args.length > 1 ? Integer.parseInt(args[1]) : 6;
+        int parallelism = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+        System.setProperty(SolverPool.PARALLELISM_PROPERTY, String.valueOf(parallelism));
+        long[] positions = Positions.suggestionCorpus(count);
+        for (boolean sharing : new boolean[]{false, true}) {
+            System.setProperty(SHARING_PROPERTY, String.valueOf(sharing));
+            try (LocalCluster cluster = new LocalCluster(slaves, WorkScheduler.Mode.WORK_STEALING)) {
+                System.out.println(LocalCluster.report(sharing ? "shared" : "private", cluster.time(positions)));
+            }
+        }
+        System.exit(0);
+    }
+}
@@ -0,0 +1,78 @@
+package com.tstorm.solitaire.bench;
+
+import com.tstorm.solitaire.moves.TranspositionTable;
+import com.tstorm.solitaire.pieces.BitBoard;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Throughput of the shared visited set as worker threads are added, next to the same table
+ * behind one global write lock the way the old {@code rotateBoard} lock guarded it.
+ * <p>
+ * Run with {@code java -cp target/classes:target/bench-classes:<dependencies> com.tstorm.solitaire.bench.VisitedSetScalingBenchmark}
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VisitedSetScalingBenchmark {
+    private static final int[] THREADS = {1, 2, 4, 8, 16, 32};
+
+    @State(Scope.Benchmark)
+    public static class SharedTable {
+        final TranspositionTable table = new TranspositionTable(64);
+        final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+        @Setup(Level.Iteration)
+        public void clear() {
+            table.clear();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Keys {
+        private long seed = System.nanoTime() | 1;
+
+        long next() {
+            // xorshift keeps key generation off the allocation and contention profile
+            seed ^= seed << 13;
+            seed ^= seed >>> 7;
+            seed ^= seed << 17;
+            return (seed & BitBoard.HOLES) | 1L << BitBoard.CENTER;
+        }
+    }
+
+    @Benchmark
+    public boolean lockFree(SharedTable shared, Keys keys) {
+        return shared.table.add(keys.next());
+    }
+
+    @Benchmark
+    public boolean globalLock(SharedTable shared, Keys keys) {
+        long key = keys.next();
+        shared.lock.writeLock().lock();
+        try {
+            return shared.table.add(key);
+        } finally {
+            shared.lock.writeLock().unlock();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads : THREADS) {
+            Options options = new OptionsBuilder()
+                    .include(VisitedSetScalingBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
@@ -1,74 +1,63 @@
 package com.tstorm.solitaire;
 
+import com.tstorm.solitaire.endgame.EndgameDatabase;
+import com.tstorm.solitaire.metrics.Metrics;
+import com.tstorm.solitaire.moves.MoveEvaluator;
 import com.tstorm.solitaire.pieces.Board;
-import com.tstorm.solitaire.pieces.Peg;
 import com.tstorm.solitaire.server.Controller;
-import j2html.tags.Tag;
-import org.json.JSONException;
-import org.json.JSONObject;
 
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
 import java.net.InetAddress;
-import java.util.Arrays;
-import java.util.List;
-import java.util.stream.Collectors;
 
-import static j2html.TagCreator.*;
 import static spark.Spark.*;
 
 public class App {
     public static final boolean EUROPEAN = false;
     public static final int PORT = 4296;
     public static final String SLAVE_CONFIGURATION_FILE = "conf/slaves.conf";
+    public static final String ENDGAME_DATABASE_FILE = "conf/endgame.db";
+    public static final String SOLUTION_CACHE_FILE = "conf/solutions.db";
     
     public static void main(String[] args) {
+        loadEndgameDatabase();
         Controller controller = new Controller();
         staticFileLocation("/public");
         webSocket("/solitaire", controller);
+        get("/metrics", (request, response) -> {
+            response.type("text/plain");
+            return Metrics.text();
+        });
+        Metrics.registerMBean();
         init();
         try (BufferedReader reader = new BufferedReader(new FileReader(SLAVE_CONFIGURATION_FILE))) {
             String line;
             while((line = reader.readLine()) != null) {
+                // name: address[:port]
                 String[] slaveInfo = line.split(": ");
                 String name = slaveInfo[0];
-                String address = slaveInfo[1];
-                controller.addSlave(name, InetAddress.getByName(address));
+                String[] address = slaveInfo[1].split(":");
+                int port = address.length > 1 ? Integer.parseInt(address[1]) : PORT;
+                controller.addSlave(name, InetAddress.getByName(address[0]), port);
             }
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
-    public static String createBoard(Board b) {
+    public static void loadEndgameDatabase() {
         try {
-            JSONObject board = new JSONObject();
-            board.put("table", table().with(
-                    createRows(b.array())
-            ));
-            return String.valueOf(board);
-        } catch (JSONException e) {
+            EndgameDatabase database = EndgameDatabase.load(ENDGAME_DATABASE_FILE);
+            MoveEvaluator.setEndgameDatabase(database);
+            System.out.println(String.format("endgame database: %d positions with at most %d pegs",
+                    database.size(), database.maxPegs()));
+        } catch (IOException e) {
             e.printStackTrace();
-            return "";
         }
     }
 
-    private static List<Tag> createRows(Peg[][] board) {
-        return Arrays.stream(board).map(row ->
-            tr().with(
-                createColumn(row)
-            )
-        ).collect(Collectors.toList());
-    }
-
-    // TODO move "select" to a config file
-    private static List<Tag> createColumn(Peg[] row) {
-        return Arrays.stream(row).map(column ->
-            td().withId("peg" + column.getId())
-                .withClass(column.isEnabled() && !column.isDiscarded() ? "on" : "off")
-                .attr("onclick", "select(this)")
-                .with(text(String.format("%d", column.getId())))
-        ).collect(Collectors.toList());
+    public static String createBoard(Board b) {
+        return BoardRenderer.CURRENT.render(b);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,80 @@
+package com.tstorm.solitaire;
+
+import com.tstorm.solitaire.pieces.BitBoard;
+import com.tstorm.solitaire.pieces.Board;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Renders a board as the {@code {"table": ...}} message the page builds its board from. All
+ * of the markup but each cell's {@code on}/{@code off} class is the same for every board, so
+ * it is prebuilt once per layout and only the classes are written into a reusable per-thread
+ * buffer. The starting board of the layout, which every new game is sent, is rendered once
+ * and kept.
+ */
+public final class BoardRenderer {
+    private static final int CELLS = Board.ROWS * Board.COLUMNS;
+    private static final byte[] ON = bytes("on"), OFF = bytes("off");
+
+    public static final BoardRenderer ENGLISH = new BoardRenderer(BitBoard.ENGLISH);
+    public static final BoardRenderer EUROPEAN = new BoardRenderer(BitBoard.EUROPEAN);
+    public static final BoardRenderer CURRENT = App.EUROPEAN ? EUROPEAN : ENGLISH;
+
+    // segments[id] is the markup before cell id's class, segments[CELLS] what follows the last
+    private final byte[][] segments = new byte[CELLS + 1][];
+    private final ThreadLocal<byte[]> buffers;
+    private final long holes;
+    private final String start;
+
+    private BoardRenderer(long holes) {
+        StringBuilder segment = new StringBuilder("{\"table\":\"<table>");
+        int length = 0;
+        for (int id = 0; id < CELLS; id++) {
+            if (id % Board.COLUMNS == 0) {
+                segment.append("<tr>");
+            }
+            segment.append("<td id=\\\"peg").append(id).append("\\\" class=\\\"");
+            segments[id] = bytes(segment);
+            length += segments[id].length;
+            segment.setLength(0);
+            segment.append("\\\" onclick=\\\"select(this)\\\">").append(id).append("<\\/td>");
+            if (id % Board.COLUMNS == Board.COLUMNS - 1) {
+                segment.append("<\\/tr>");
+            }
+        }
+        segment.append("<\\/table>\"}");
+        segments[CELLS] = bytes(segment);
+        int capacity = length + segments[CELLS].length + (CELLS * OFF.length);
+        this.buffers = ThreadLocal.withInitial(() -> new byte[capacity]);
+        this.holes = holes;
+        this.start = write(holes);
+    }
+
+    public String render(Board b) {
+        return render(b.pegs());
+    }
+
+    public String render(long pegs) {
+        return pegs == holes ? start : write(pegs);
+    }
+
+    private String write(long pegs) {
+        byte[] buffer = buffers.get();
+        int position = 0;
+        for (int id = 0; id < CELLS; id++) {
+            position = put(buffer, position, segments[id]);
+            position = put(buffer, position, BitBoard.hasPeg(pegs, id) ? ON : OFF);
+        }
+        position = put(buffer, position, segments[CELLS]);
+        return new String(buffer, 0, position, StandardCharsets.ISO_8859_1);
+    }
+
+    private static int put(byte[] buffer, int position, byte[] bytes) {
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        return position + bytes.length;
+    }
+
+    private static byte[] bytes(CharSequence text) {
+        return text.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+}
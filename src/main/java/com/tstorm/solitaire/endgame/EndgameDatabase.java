@@ -0,0 +1,96 @@
+package com.tstorm.solitaire.endgame;
+
+import com.tstorm.solitaire.pieces.BitBoard;
+import com.tstorm.solitaire.pieces.Symmetry;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+
+/**
+ * Read-only, memory-mapped set of the canonical keys of every solvable position with at most
+ * {@link #maxPegs()} pegs, as written by {@link EndgameDatabaseBuilder}. Lookups are a binary
+ * search over the mapped file, so the table costs next to nothing on the heap.
+ * <p>
+ * File layout (big endian): magic, layout mask, max pegs (int), key count (int), then the
+ * sorted keys.
+ */
+public class EndgameDatabase {
+    public static final long MAGIC = 0x50454753454E4431L; // "PEGSEND1"
+    public static final EndgameDatabase EMPTY = new EndgameDatabase();
+
+    private static final int HEADER = (Long.BYTES * 2) + (Integer.BYTES * 2);
+
+    private final ByteBuffer keys;
+    private final int maxPegs;
+    private final int size;
+
+    private EndgameDatabase() {
+        keys = ByteBuffer.allocate(0);
+        maxPegs = 0;
+        size = 0;
+    }
+
+    private EndgameDatabase(MappedByteBuffer buffer) throws IOException {
+        if (buffer.getLong(0) != MAGIC) {
+            throw new IOException("Not an endgame database");
+        }
+        if (buffer.getLong(Long.BYTES) != BitBoard.HOLES) {
+            throw new IOException("Endgame database was built for a different board layout");
+        }
+        keys = buffer;
+        maxPegs = buffer.getInt(Long.BYTES * 2);
+        size = buffer.getInt((Long.BYTES * 2) + Integer.BYTES);
+        if (buffer.capacity() < HEADER + ((long) size * Long.BYTES)) {
+            throw new IOException("Endgame database is truncated");
+        }
+    }
+
+    /**
+     * Maps {@code file} if it exists, otherwise returns {@link #EMPTY}.
+     */
+    public static EndgameDatabase load(String file) throws IOException {
+        MappedByteBuffer buffer = MappedFiles.map(file);
+        return buffer == null ? EMPTY : new EndgameDatabase(buffer);
+    }
+
+    public int maxPegs() {
+        return maxPegs;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Whether the database can answer for {@code pegs}.
+     */
+    public boolean covers(long pegs) {
+        return BitBoard.pegCount(pegs) <= maxPegs;
+    }
+
+    /**
+     * Whether {@code pegs} can be reduced to a single peg. Only meaningful when
+     * {@link #covers(long)} is true.
+     */
+    public boolean isSolvable(long pegs) {
+        return containsCanonical(Symmetry.canonical(pegs));
+    }
+
+    public boolean containsCanonical(long key) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long found = keys.getLong(HEADER + (middle * Long.BYTES));
+            if (found < key) {
+                low = middle + 1;
+            } else if (found > key) {
+                high = middle - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,96 @@
+package com.tstorm.solitaire.endgame;
+
+import com.tstorm.solitaire.App;
+import com.tstorm.solitaire.pieces.BitBoard;
+import com.tstorm.solitaire.pieces.MoveTable;
+import com.tstorm.solitaire.pieces.Symmetry;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Offline tool that writes every solvable position with at most N pegs to an
+ * {@link EndgameDatabase} file.
+ * <p>
+ * Positions are enumerated backwards from the single peg boards: playing any jump in reverse
+ * on a solvable position gives a solvable position with one more peg, and every solvable
+ * position has a winning jump, so level {@code k + 1} is exactly the reverse jumps of level
+ * {@code k}.
+ * <p>
+ * Usage: {@code EndgameDatabaseBuilder [maxPegs] [file]}
+ */
+public class EndgameDatabaseBuilder {
+    public static final int DEFAULT_MAX_PEGS = 12;
+
+    public static void main(String[] args) throws IOException {
+        int maxPegs = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_MAX_PEGS;
+        String file = args.length > 1 ? args[1] : App.ENDGAME_DATABASE_FILE;
+        long[] positions = solvablePositions(maxPegs);
+        write(file, maxPegs, positions);
+        System.out.println(String.format("wrote %d positions with at most %d pegs to %s",
+                positions.length, maxPegs, file));
+    }
+
+    /**
+     * Canonical keys of every solvable position with at most {@code maxPegs} pegs, sorted.
+     */
+    public static long[] solvablePositions(int maxPegs) {
+        MoveTable table = MoveTable.CURRENT;
+        int[] moves = new int[table.size()];
+        long[] level = new long[BitBoard.SIZE];
+        int size = 0;
+        for (int id = 0; id < Long.SIZE; id++) {
+            if (BitBoard.isHole(id)) {
+                level[size++] = Symmetry.canonical(BitBoard.bit(id));
+            }
+        }
+        level = unique(level, size);
+        long[] all = level;
+        for (int pegs = 2; pegs <= maxPegs; pegs++) {
+            long[] next = new long[Math.max(16, level.length * 4)];
+            size = 0;
+            for (long position : level) {
+                int count = table.generateReverse(position, moves);
+                for (int i = 0; i < count; i++) {
+                    if (size == next.length) {
+                        next = Arrays.copyOf(next, next.length * 2);
+                    }
+                    next[size++] = Symmetry.canonical(MoveTable.jump(position, moves[i]));
+                }
+            }
+            level = unique(next, size);
+            System.out.println(String.format("%d pegs: %d positions", pegs, level.length));
+            long[] merged = Arrays.copyOf(all, all.length + level.length);
+            System.arraycopy(level, 0, merged, all.length, level.length);
+            all = merged;
+        }
+        Arrays.sort(all);
+        return all;
+    }
+
+    private static long[] unique(long[] keys, int size) {
+        Arrays.sort(keys, 0, size);
+        int unique = 0;
+        for (int i = 0; i < size; i++) {
+            if (unique == 0 || keys[unique - 1] != keys[i]) {
+                keys[unique++] = keys[i];
+            }
+        }
+        return Arrays.copyOf(keys, unique);
+    }
+
+    private static void write(String file, int maxPegs, long[] positions) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeLong(EndgameDatabase.MAGIC);
+            out.writeLong(BitBoard.HOLES);
+            out.writeInt(maxPegs);
+            out.writeInt(positions.length);
+            for (long position : positions) {
+                out.writeLong(position);
+            }
+        }
+    }
+}
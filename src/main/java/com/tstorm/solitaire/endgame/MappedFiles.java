@@ -0,0 +1,30 @@
+package com.tstorm.solitaire.endgame;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Maps the read-only tables in this package into memory.
+ */
+final class MappedFiles {
+    private MappedFiles() {
+    }
+
+    /**
+     * The whole of {@code file} mapped read-only, or null if it does not exist.
+     */
+    static MappedByteBuffer map(String file) throws IOException {
+        Path path = Paths.get(file);
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.tstorm.solitaire.endgame;
+
+import com.tstorm.solitaire.moves.Move;
+import com.tstorm.solitaire.pieces.BitBoard;
+import com.tstorm.solitaire.pieces.MoveTable;
+import com.tstorm.solitaire.pieces.Symmetry;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read-only, memory-mapped table of winning moves for positions on the solution lines of
+ * every opening, as written by {@link SolutionCacheBuilder}. Entries are stored in the
+ * orientation of the canonical key and mapped back onto the board being asked about.
+ * <p>
+ * File layout (big endian): magic, layout mask, entry count (int), then entries of canonical
+ * key (long) and packed move (int) sorted by key.
+ */
+public class SolutionCache {
+    public static final long MAGIC = 0x50454753534F4C31L; // "PEGSSOL1"
+    public static final SolutionCache EMPTY = new SolutionCache();
+
+    static final int HEADER = (Long.BYTES * 2) + Integer.BYTES;
+    static final int ENTRY = Long.BYTES + Integer.BYTES;
+
+    private final ByteBuffer entries;
+    private final int size;
+
+    private SolutionCache() {
+        entries = ByteBuffer.allocate(0);
+        size = 0;
+    }
+
+    private SolutionCache(MappedByteBuffer buffer) throws IOException {
+        if (buffer.getLong(0) != MAGIC) {
+            throw new IOException("Not a solution cache");
+        }
+        if (buffer.getLong(Long.BYTES) != BitBoard.HOLES) {
+            throw new IOException("Solution cache was built for a different board layout");
+        }
+        entries = buffer;
+        size = buffer.getInt(Long.BYTES * 2);
+        if (buffer.capacity() < HEADER + ((long) size * ENTRY)) {
+            throw new IOException("Solution cache is truncated");
+        }
+    }
+
+    /**
+     * Maps {@code file} if it exists, otherwise returns {@link #EMPTY}.
+     */
+    public static SolutionCache load(String file) throws IOException {
+        MappedByteBuffer buffer = MappedFiles.map(file);
+        return buffer == null ? EMPTY : new SolutionCache(buffer);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The cached winning moves of {@code pegs}, or an empty list when the position is not on
+     * a known winning line.
+     */
+    public List<Move> winningMoves(long pegs) {
+        List<Move> moves = new ArrayList<>();
+        int transform = Symmetry.canonicalTransform(pegs);
+        long key = Symmetry.transform(pegs, transform);
+        int back = Symmetry.inverse(transform);
+        for (int i = firstIndex(key); i < size && keyAt(i) == key; i++) {
+            int m = entries.getInt(HEADER + (i * ENTRY) + Long.BYTES);
+            moves.add(new Move(Symmetry.transformHole(MoveTable.start(m), back),
+                    Symmetry.transformHole(MoveTable.jumped(m), back),
+                    Symmetry.transformHole(MoveTable.end(m), back)));
+        }
+        return moves;
+    }
+
+    private long keyAt(int index) {
+        return entries.getLong(HEADER + (index * ENTRY));
+    }
+
+    private int firstIndex(long key) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (keyAt(middle) < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,125 @@
+package com.tstorm.solitaire.endgame;
+
+import com.tstorm.solitaire.App;
+import com.tstorm.solitaire.moves.DepthFirstSolver;
+import com.tstorm.solitaire.moves.Pruning;
+import com.tstorm.solitaire.moves.Search;
+import com.tstorm.solitaire.moves.SolvabilityOracle;
+import com.tstorm.solitaire.pieces.BitBoard;
+import com.tstorm.solitaire.pieces.MoveTable;
+import com.tstorm.solitaire.pieces.Symmetry;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Offline tool that writes a {@link SolutionCache}. Starting from every distinct opening (one
+ * hole emptied, up to symmetry) it walks the positions reachable through winning moves
+ * breadth first, recording every winning move of every position it visits, until it runs
+ * out of positions or reaches the cap. Breadth first keeps the opening, where searches are
+ * slowest, fully covered when the cap cuts the tail.
+ * <p>
+ * Usage: {@code SolutionCacheBuilder [maxPositions] [file]}
+ */
+public class SolutionCacheBuilder {
+    public static final int DEFAULT_MAX_POSITIONS = 20000;
+
+    private final MoveTable table = MoveTable.CURRENT;
+    private final DepthFirstSolver solver;
+
+    private long[] entryKeys = new long[1024];
+    private int[] entryMoves = new int[1024];
+    private int entries = 0;
+
+    public SolutionCacheBuilder(EndgameDatabase endgame) {
+        solver = new DepthFirstSolver(new SolvabilityOracle(256), endgame, new Pruning(), Search.unbounded());
+    }
+
+    public static void main(String[] args) throws IOException {
+        int maxPositions = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_MAX_POSITIONS;
+        String file = args.length > 1 ? args[1] : App.SOLUTION_CACHE_FILE;
+        SolutionCacheBuilder builder = new SolutionCacheBuilder(EndgameDatabase.load(App.ENDGAME_DATABASE_FILE));
+        int positions = builder.build(maxPositions);
+        builder.write(file);
+        System.out.println(String.format("wrote %d winning moves for %d positions to %s",
+                builder.entries, positions, file));
+    }
+
+    public int build(int maxPositions) {
+        Set<Long> seen = new HashSet<>();
+        long[] queue = new long[maxPositions];
+        int head = 0, tail = 0;
+        for (int id = 0; id < Long.SIZE; id++) {
+            if (BitBoard.isHole(id)) {
+                long opening = BitBoard.HOLES & ~BitBoard.bit(id);
+                if (seen.add(Symmetry.canonical(opening)) && tail < maxPositions) {
+                    queue[tail++] = opening;
+                }
+            }
+        }
+        int visited = 0;
+        int[] moves = new int[table.size()];
+        while (head < tail) {
+            long position = queue[head++];
+            visited++;
+            int transform = Symmetry.canonicalTransform(position);
+            long key = Symmetry.transform(position, transform);
+            int count = table.generate(position, moves);
+            for (int i = 0; i < count; i++) {
+                long child = MoveTable.jump(position, moves[i]);
+                if (!solver.canWin(child)) {
+                    continue;
+                }
+                addEntry(key, MoveTable.pack(Symmetry.transformHole(MoveTable.start(moves[i]), transform),
+                        Symmetry.transformHole(MoveTable.jumped(moves[i]), transform),
+                        Symmetry.transformHole(MoveTable.end(moves[i]), transform)));
+                if (BitBoard.pegCount(child) > 1 && tail < maxPositions && seen.add(Symmetry.canonical(child))) {
+                    queue[tail++] = child;
+                }
+            }
+        }
+        return visited;
+    }
+
+    private void addEntry(long key, int move) {
+        if (entries == entryKeys.length) {
+            entryKeys = Arrays.copyOf(entryKeys, entries * 2);
+            entryMoves = Arrays.copyOf(entryMoves, entries * 2);
+        }
+        entryKeys[entries] = key;
+        entryMoves[entries] = move;
+        entries++;
+    }
+
+    public void write(String file) throws IOException {
+        Integer[] order = new Integer[entries];
+        for (int i = 0; i < entries; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> entryKeys[a] != entryKeys[b]
+                ? Long.compare(entryKeys[a], entryKeys[b])
+                : Integer.compare(entryMoves[a], entryMoves[b]));
+        int unique = 0;
+        for (int i = 0; i < entries; i++) {
+            int entry = order[i];
+            if (unique == 0 || entryKeys[order[unique - 1]] != entryKeys[entry] || entryMoves[order[unique - 1]] != entryMoves[entry]) {
+                order[unique++] = entry;
+            }
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeLong(SolutionCache.MAGIC);
+            out.writeLong(BitBoard.HOLES);
+            out.writeInt(unique);
+            for (int i = 0; i < unique; i++) {
+                out.writeLong(entryKeys[order[i]]);
+                out.writeInt(entryMoves[order[i]]);
+            }
+        }
+        entries = unique;
+    }
+}
@@ -0,0 +1,71 @@
+package com.tstorm.solitaire.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts values into power-of-two buckets: recording is two {@link LongAdder} updates and a
+ * max, with no locks, and a quantile is reported as the upper bound of its bucket, so it is
+ * at most twice the true value.
+ */
+public final class Histogram {
+    private final LongAdder[] buckets = new LongAdder[Long.SIZE];
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public Histogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records {@code value}; negative values count as zero.
+     */
+    public void record(long value) {
+        value = Math.max(0, value);
+        // bucket i holds [2^(i-1), 2^i), bucket 0 holds 0
+        buckets[Long.SIZE - Long.numberOfLeadingZeros(value)].increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    public long count() {
+        long count = 0;
+        for (LongAdder bucket : buckets) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    public long sum() {
+        return sum.sum();
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    /**
+     * The value {@code quantile} (0 to 1) of the recorded values are at or below, 0 if none
+     * have been recorded.
+     */
+    public long quantile(double quantile) {
+        long[] counts = new long[buckets.length];
+        long count = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            counts[i] = buckets[i].sum();
+            count += counts[i];
+        }
+        long rank = (long) Math.ceil(quantile * count);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank && seen > 0) {
+                long upper = i == 0 ? 0 : (1L << i) - 1;
+                return Math.min(upper, max());
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,113 @@
+package com.tstorm.solitaire.metrics;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * The counters and histograms of this node, cheap enough to leave on. Counters are
+ * {@link LongAdder}s, which threads add to without locks or contending for one cache line.
+ * The sequential search loops below the fork threshold add their counts once per search
+ * rather than once per position; a forked task, of which there are far fewer, adds its own
+ * once per task.
+ * Other components register gauges they already keep, such as the solver pool's steals,
+ * queue depth and busy workers, and the pruning cuts. Everything is read by name through {@link #snapshot()}, which the
+ * {@code /metrics} endpoint and JMX ({@value #OBJECT_NAME}) both serve.
+ */
+public final class Metrics {
+    public static final String OBJECT_NAME = "com.tstorm.solitaire:type=Metrics";
+
+    private static final Map<String, LongSupplier> values = new ConcurrentSkipListMap<>();
+
+    public static final LongAdder NODES_EXPANDED = counter("solver.nodesExpanded");
+    // children claimed in a search's visited set and forked, and those another task had claimed
+    public static final LongAdder FORKS = counter("solver.forks");
+    public static final LongAdder VISITED_DUPLICATES = counter("solver.visitedDuplicates");
+    // every lookup of the solvability oracle (the transposition table) the search makes
+    public static final LongAdder ORACLE_HITS = counter("oracle.hits");
+    public static final LongAdder ORACLE_MISSES = counter("oracle.misses");
+    // units the master's searches were split into, and those it handed on from lost slaves
+    public static final LongAdder WORK_UNITS = counter("scheduler.units");
+    public static final LongAdder REDISPATCHED_UNITS = counter("scheduler.redispatchedUnits");
+    public static final LongAdder BYTES_SENT = counter("cluster.bytesSent");
+    public static final LongAdder BYTES_RECEIVED = counter("cluster.bytesReceived");
+    public static final LongAdder WEBSOCKET_BYTES_SENT = counter("websocket.bytesSent");
+    public static final Histogram SUGGESTION_MILLIS = histogram("suggestion.millis");
+    public static final Histogram FIRST_SUGGESTION_MILLIS = histogram("suggestion.firstMoveMillis");
+
+    private Metrics() {
+    }
+
+    private static LongAdder counter(String name) {
+        LongAdder counter = new LongAdder();
+        gauge(name, counter::sum);
+        return counter;
+    }
+
+    private static Histogram histogram(String name) {
+        Histogram histogram = new Histogram();
+        histogram(name, histogram);
+        return histogram;
+    }
+
+    public static void gauge(String name, LongSupplier value) {
+        values.put(name, value);
+    }
+
+    /**
+     * Registers the count, quantiles and maximum of {@code histogram} under {@code name}.
+     */
+    public static void histogram(String name, Histogram histogram) {
+        gauge(name + ".count", histogram::count);
+        gauge(name + ".p50", () -> histogram.quantile(0.5));
+        gauge(name + ".p95", () -> histogram.quantile(0.95));
+        gauge(name + ".p99", () -> histogram.quantile(0.99));
+        gauge(name + ".max", histogram::max);
+    }
+
+    /**
+     * Drops every metric registered under {@code name}, e.g. those of a slave that has left.
+     */
+    public static void remove(String name) {
+        values.keySet().removeIf(key -> key.equals(name) || key.startsWith(name + "."));
+    }
+
+    public static Map<String, Long> snapshot() {
+        Map<String, Long> snapshot = new LinkedHashMap<>();
+        for (Map.Entry<String, LongSupplier> value : values.entrySet()) {
+            snapshot.put(value.getKey(), value.getValue().getAsLong());
+        }
+        return snapshot;
+    }
+
+    /**
+     * The snapshot as {@code name value} lines, sorted by name.
+     */
+    public static String text() {
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, Long> value : snapshot().entrySet()) {
+            text.append(value.getKey()).append(' ').append(value.getValue()).append('\n');
+        }
+        return text.toString();
+    }
+
+    /**
+     * Serves the metrics over JMX. Only the first call registers them.
+     */
+    public static void registerMBean() {
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+                MetricsMXBean bean = Metrics::snapshot;
+                ManagementFactory.getPlatformMBeanServer().registerMBean(bean, name);
+            }
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+}
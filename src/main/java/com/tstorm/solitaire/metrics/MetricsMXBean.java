@@ -0,0 +1,10 @@
+package com.tstorm.solitaire.metrics;
+
+import java.util.Map;
+
+/**
+ * Every metric of this node by name, as served over JMX.
+ */
+public interface MetricsMXBean {
+    Map<String, Long> getValues();
+}
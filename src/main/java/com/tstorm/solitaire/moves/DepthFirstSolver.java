@@ -0,0 +1,125 @@
+package com.tstorm.solitaire.moves;
+
+import com.tstorm.solitaire.endgame.EndgameDatabase;
+import com.tstorm.solitaire.metrics.Metrics;
+import com.tstorm.solitaire.pieces.BitBoard;
+import com.tstorm.solitaire.pieces.MoveTable;
+import com.tstorm.solitaire.pieces.Symmetry;
+
+/**
+ * Decides whether a position can be reduced to one peg with an iterative depth first search
+ * on a single mutable bitboard. Moves are made and unmade in place and the pending moves of
+ * every level live in one preallocated int array, so memory is bounded by the depth of the
+ * game rather than by the size of the frontier. Every position it finishes is recorded in
+ * the {@link SolvabilityOracle}. The moves of each level are tried in the order given by a
+ * {@link MoveOrdering}, which is rewarded with every move of a winning line.
+ */
+public class DepthFirstSolver {
+    private static final int CANCELLATION_CHECK_INTERVAL = 4096;
+
+    private final MoveTable table = MoveTable.CURRENT;
+    private final SolvabilityOracle oracle;
+    private final EndgameDatabase endgame;
+    private final Pruning pruning;
+    private final Search search;
+    private final MoveOrdering ordering;
+
+    private final int width = table.size();
+    private final int[] moves = new int[BitBoard.SIZE * width];
+    private final int[] counts = new int[BitBoard.SIZE];
+    private final int[] next = new int[BitBoard.SIZE];
+    private final long[] keys = new long[BitBoard.SIZE];
+    private long hits = 0, misses = 0;
+
+    public DepthFirstSolver(SolvabilityOracle oracle, EndgameDatabase endgame, Pruning pruning, Search search) {
+        this(oracle, endgame, pruning, search, MoveOrdering.create());
+    }
+
+    public DepthFirstSolver(SolvabilityOracle oracle, EndgameDatabase endgame, Pruning pruning, Search search,
+                            MoveOrdering ordering) {
+        this.oracle = oracle;
+        this.endgame = endgame;
+        this.pruning = pruning;
+        this.search = search;
+        this.ordering = ordering;
+    }
+
+    /**
+     * Returns true if {@code start} is solvable. Returns false if it is not, or if the
+     * search was cancelled first; in that case nothing unproven is recorded.
+     */
+    public boolean canWin(long start) {
+        SolvabilityOracle.Result known = known(start);
+        if (known != SolvabilityOracle.Result.UNKNOWN) {
+            return known == SolvabilityOracle.Result.WIN;
+        }
+        long pegs = start;
+        int pegCount = BitBoard.pegCount(start);
+        int depth = 0;
+        int expanded = 0;
+        enter(pegs, depth, pegCount);
+        try {
+            while (true) {
+                if (next[depth] < counts[depth]) {
+                    long child = MoveTable.jump(pegs, moves[(depth * width) + next[depth]++]);
+                    known = known(child);
+                    if (known == SolvabilityOracle.Result.WIN) {
+                        for (int i = 0; i <= depth; i++) {
+                            oracle.recordCanonical(keys[i], SolvabilityOracle.Result.WIN);
+                            ordering.reward(moves[(i * width) + next[i] - 1], pegCount - i);
+                        }
+                        return true;
+                    } else if (known == SolvabilityOracle.Result.UNKNOWN) {
+                        if (++expanded % CANCELLATION_CHECK_INTERVAL == 0 && search.isCancelled()) {
+                            return false;
+                        }
+                        pegs = child;
+                        depth++;
+                        enter(pegs, depth, pegCount - depth);
+                    }
+                } else {
+                    // every move from here loses
+                    oracle.recordCanonical(keys[depth], SolvabilityOracle.Result.LOSE);
+                    if (depth == 0) {
+                        return false;
+                    }
+                    depth--;
+                    pegs = MoveTable.jump(pegs, moves[(depth * width) + next[depth] - 1]);
+                }
+            }
+        } finally {
+            // the loop's counts are added once per search, not once per position
+            Metrics.NODES_EXPANDED.add(expanded + 1);
+            Metrics.ORACLE_HITS.add(hits);
+            Metrics.ORACLE_MISSES.add(misses);
+            hits = 0;
+            misses = 0;
+        }
+    }
+
+    private void enter(long pegs, int depth, int pegCount) {
+        keys[depth] = Symmetry.canonical(pegs);
+        counts[depth] = table.generate(pegs, moves, depth * width);
+        ordering.order(moves, depth * width, counts[depth], pegCount);
+        next[depth] = 0;
+    }
+
+    private SolvabilityOracle.Result known(long pegs) {
+        if (BitBoard.pegCount(pegs) == 1) {
+            return SolvabilityOracle.Result.WIN;
+        }
+        if (endgame.covers(pegs)) {
+            return endgame.isSolvable(pegs) ? SolvabilityOracle.Result.WIN : SolvabilityOracle.Result.LOSE;
+        }
+        SolvabilityOracle.Result known = oracle.lookup(pegs);
+        if (known != SolvabilityOracle.Result.UNKNOWN) {
+            hits++;
+        } else {
+            misses++;
+            if (pruning.isHopeless(pegs)) {
+                return SolvabilityOracle.Result.LOSE;
+            }
+        }
+        return known;
+    }
+}
@@ -1,167 +1,263 @@
 package com.tstorm.solitaire.moves;
 
-import com.tstorm.solitaire.App;
-import com.tstorm.solitaire.pieces.Board;
-import com.tstorm.solitaire.pieces.Peg;
-import com.tstorm.solitaire.server.Slave;
+import com.tstorm.solitaire.endgame.EndgameDatabase;
+import com.tstorm.solitaire.metrics.Metrics;
+import com.tstorm.solitaire.pieces.BitBoard;
+import com.tstorm.solitaire.pieces.MoveTable;
+import com.tstorm.solitaire.pieces.Symmetry;
 
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.RecursiveTask;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public abstract class MoveEvaluator extends RecursiveTask<Boolean> {
-    private enum Translation {
-        NINETY_DEGREES,
-        ONE_EIGHTY_DEGREES,
-        TWO_SEVENTY_DEGREES,
-        HORIZONTAL_REFLECTION,
-        VERTICAL_REFLECTION
+    /**
+     * How positions below the fork threshold are solved: {@code FRONTIER} pushes every child
+     * board onto a stack before exploring any of them, {@code DEPTH_FIRST} uses a
+     * {@link DepthFirstSolver}. Selected with {@code solitaire.solver.mode}.
+     */
+    public enum SolverMode {
+        FRONTIER,
+        DEPTH_FIRST
     }
     
-    @FunctionalInterface
-    private interface Translator {
-        int translate(Peg p, int row, int col);
-    }
+    public static final String SOLVER_MODE_PROPERTY = "solitaire.solver.mode";
     
-    public abstract Board getBoard();
     public abstract String getRole();
     
-    private static final int TOTAL_PEGS = App.EUROPEAN ? 37 : 33;
+    private static final int TOTAL_PEGS = BitBoard.SIZE;
     private static final int MINIMUM_REMAINING_MOVES = 3;
+    private static final MoveTable MOVES = MoveTable.CURRENT;
+    private static final int CANCELLATION_CHECK_INTERVAL = 4096;
     
-    private static final ReadWriteLock rotateBoard = new ReentrantReadWriteLock();
-    private static final List<Board> existingBoards = new ArrayList<>();
+    private static final SolverMode SOLVER_MODE =
+            SolverMode.valueOf(System.getProperty(SOLVER_MODE_PROPERTY, SolverMode.FRONTIER.name()));
+    private static final SolvabilityOracle oracle = new SolvabilityOracle();
+    private static final Pruning pruning = new Pruning();
+    private static final MoveOrdering ordering = MoveOrdering.create();
+    private static volatile EndgameDatabase endgame = EndgameDatabase.EMPTY;
     
+    protected final long pegs;
+    protected final Search search;
     protected Optional<Move> evaluationMove;
+    private boolean proven = false;
     
-    public MoveEvaluator(Optional<Move> evaluationMove) {
+    public MoveEvaluator(long pegs, Optional<Move> evaluationMove, Search search) {
+        this.pegs = pegs;
         this.evaluationMove = evaluationMove;
+        this.search = search;
+    }
+    
+    public static void setEndgameDatabase(EndgameDatabase database) {
+        endgame = database;
+    }
+    
+    /**
+     * Serves the cuts of each pruning heuristic as {@code pruning.*} gauges.
+     */
+    public static void registerMetrics() {
+        for (Pruning.Heuristic h : Pruning.Heuristic.values()) {
+            Metrics.gauge("pruning." + h.name().toLowerCase(), () -> pruning.cuts(h));
+        }
+    }
+    
+    public static Pruning getPruning() {
+        return pruning;
+    }
+    
+    public static SolvabilityOracle getOracle() {
+        return oracle;
+    }
+    
+    public static MoveOrdering getOrdering() {
+        return ordering;
+    }
+    
+    public long getPegs() {
+        return pegs;
+    }
+    
+    public Search getSearch() {
+        return search;
     }
     
+    /**
+     * True once {@link #compute()} has decided this position either way. A false result of an
+     * unproven evaluation only means the search was cut short.
+     */
+    public boolean isProven() {
+        return proven;
+    }
+    
+    /**
+     * The outcome of a finished evaluation, {@code UNKNOWN} if it was cut short.
+     */
+    public SolvabilityOracle.Result getResult() {
+        if (!isDone() || !proven) {
+            return SolvabilityOracle.Result.UNKNOWN;
+        }
+        return getRawResult() ? SolvabilityOracle.Result.WIN : SolvabilityOracle.Result.LOSE;
+    }
+    
+    /**
+     * Decides {@code pegs} with a {@link DepthFirstSolver} on the calling thread, leaving the
+     * search's visited set alone. For positions an earlier evaluation could not prove, whose
+     * children that evaluation has already claimed there.
+     */
+    public static SolvabilityOracle.Result solve(long pegs, Search search) {
+        if (new DepthFirstSolver(oracle, endgame, pruning, search, ordering).canWin(pegs)) {
+            return SolvabilityOracle.Result.WIN;
+        }
+        return search.isCancelled() ? SolvabilityOracle.Result.UNKNOWN : SolvabilityOracle.Result.LOSE;
+    }
+
     @Override
     public Boolean compute() {
-        List<Move> remainingMoves = getBoard().getMoves();
-        if (belowThreshold(remainingMoves.size())) {
-            LinkedList<Board> boards = new LinkedList<>();
-            boards.add(getBoard());
-            return canWin(boards);
+        if (search.isCancelled()) {
+            return false;
+        }
+        if (endgame.covers(pegs)) {
+            proven = true;
+            return endgame.isSolvable(pegs);
+        }
+        SolvabilityOracle.Result known = oracle.lookup(pegs);
+        if (known != SolvabilityOracle.Result.UNKNOWN) {
+            Metrics.ORACLE_HITS.increment();
+            proven = true;
+            return known == SolvabilityOracle.Result.WIN;
+        }
+        Metrics.ORACLE_MISSES.increment();
+        if (pruning.isHopeless(pegs)) {
+            return prove(false, true);
+        }
+        int[] remainingMoves = new int[MOVES.size()];
+        int moveCount = MOVES.generate(pegs, remainingMoves);
+        int pegCount = BitBoard.pegCount(pegs);
+        ordering.order(remainingMoves, 0, moveCount, pegCount);
+        if (belowThreshold(moveCount)) {
+            boolean win = SOLVER_MODE == SolverMode.DEPTH_FIRST
+                    ? new DepthFirstSolver(oracle, endgame, pruning, search, ordering).canWin(pegs)
+                    : canWin(pegs);
+            return prove(win, win || !search.isCancelled());
         } else {
+            // only a position whose every child was searched (here or elsewhere) is a proven loss
+            boolean complete = true;
+            long[] elsewhere = new long[moveCount];
+            int elsewhereCount = 0;
             List<MoveEvaluator> subMoves = new ArrayList<>();
-            for (Move m : remainingMoves) {
-                Board copy = new Board(getBoard());
-                copy.jump(m.start, m.jumped, m.end);
-                if (!existingBoard(copy)) {
-                    MoveEvaluator subMoveEvaluator;
-                    if (getRole().equals("Master")) {
-                        subMoveEvaluator = new MasterMoveEvaluator(copy, Optional.empty());
-                    } else if (getRole().equals("Slave")) {
-                        subMoveEvaluator = new SlaveMoveEvaluator(copy, Optional.empty());
-                    } else {
-                        throw new RuntimeException("Unsupported MoveEvaluator: " + getRole());
-                    }
+            int[] subMoveJumps = new int[moveCount];
+            for (int i = 0; i < moveCount; i++) {
+                long copy = MoveTable.jump(pegs, remainingMoves[i]);
+                if (pruning.isHopeless(copy)) {
+                    continue;
+                }
+                if (search.getVisited().add(Symmetry.canonical(copy))) {
+                    MoveEvaluator subMoveEvaluator = child(copy);
+                    subMoveJumps[subMoves.size()] = remainingMoves[i];
                     subMoves.add(subMoveEvaluator);
                     subMoveEvaluator.fork();
-                    addToExistingBoards(copy);
+                } else {
+                    elsewhere[elsewhereCount++] = copy;
                 }
             }
-            for (MoveEvaluator child : subMoves) {
+            Metrics.NODES_EXPANDED.increment();
+            Metrics.FORKS.add(subMoves.size());
+            Metrics.VISITED_DUPLICATES.add(elsewhereCount);
+            for (int i = 0; i < subMoves.size(); i++) {
+                MoveEvaluator child = subMoves.get(i);
                 if (child.join()) {
-                    return true;
+                    ordering.reward(subMoveJumps[i], pegCount);
+                    return prove(true, true);
                 }
+                complete &= child.proven;
             }
-            return false;
-        }
-    }
-    
-    private boolean belowThreshold(int remainingMoves) {
-        int remainingPegs = getBoard().remainingPegs();
-        return remainingMoves <= MINIMUM_REMAINING_MOVES && (remainingPegs >> 1) <= TOTAL_PEGS;
-    }
-    
-    private boolean canWin(LinkedList<Board> boards) {
-        while (!boards.isEmpty()) {
-            Board board = boards.remove();
-            List<Move> remainingMoves = board.getMoves();
-            if (remainingMoves.size() != 0) {
-                for (Move m : remainingMoves) {
-                    Board b = new Board(board);
-                    b.jump(m.start, m.jumped, m.end);
-                    boards.push(b);
-                }
-            } else {
-                if (TOTAL_PEGS - board.emptyHoles().keySet().size() == 1) {
-                    return true;
+            // boards another task was searching have usually been proven by now, and are
+            // searched here if not, since their owner may still be at it
+            for (int i = 0; i < elsewhereCount && !search.isCancelled(); i++) {
+                MoveEvaluator other = child(elsewhere[i]);
+                if (other.invoke()) {
+                    return prove(true, true);
                 }
+                complete &= other.proven;
             }
+            return prove(false, complete && !search.isCancelled());
         }
-        return false;
     }
     
-    private boolean existingBoard(Board board) {
-        boolean exists = false;
-        rotateBoard.readLock().lock();
-        try {
-            for (Board b : existingBoards) {
-                if (b.compareTo(board) == Board.TRUE) {
-                    exists = true;
-                    // because we are holding a read lock we should get out as soon as possible
-                    break; // for any waiting writers
-                }
-            }
-        } finally {
-            rotateBoard.readLock().unlock();
+    private MoveEvaluator child(long pegs) {
+        if (getRole().equals("Master")) {
+            return new MasterMoveEvaluator(pegs, Optional.empty(), search);
+        } else if (getRole().equals("Slave")) {
+            return new SlaveMoveEvaluator(pegs, Optional.empty(), search);
         }
-        return exists;
+        throw new RuntimeException("Unsupported MoveEvaluator: " + getRole());
     }
     
-    private void addToExistingBoards(Board board) {
-        Board[] boards = new Board[Translation.values().length + 1];
-        boards[0] = board;
-        int i = 1;
-        for (Translation t : Translation.values()) {
-            boards[i++] = rotate(boards[0], t);
-        }
-        rotateBoard.writeLock().lock();
-        try {
-            for (Board b : boards) {
-                existingBoards.add(b);
-            }
-        } finally {
-            rotateBoard.writeLock().unlock();
+    private boolean prove(boolean win, boolean certain) {
+        if (certain) {
+            oracle.record(pegs, win);
+            proven = true;
         }
+        return win;
     }
     
-    private Board rotate(Board b, Translation translation) {
-        switch (translation) {
-            case NINETY_DEGREES:
-                return rotation(b, (peg, row, col) -> peg.getId() + (42 - (row * 6)) - (col * 8));
-            case ONE_EIGHTY_DEGREES:
-                return rotation(b, (peg, row, col) -> peg.getId() + (48 - (peg.getId() * 2)));
-            case TWO_SEVENTY_DEGREES:
-                return rotation(b, (peg, row, col) -> peg.getId() + (6 - (row * 8)) + (col * 6));
-            case HORIZONTAL_REFLECTION:
-                return rotation(b, (peg, row, col) -> (42 - (row * 7)) + col);
-            case VERTICAL_REFLECTION:
-                return rotation(b, (peg, row, col) -> (6 + (row * 7)) - col);
-            default:
-                return b; // if an invalid translation is provided just return the origin board
-        }
+    private boolean belowThreshold(int remainingMoves) {
+        int remainingPegs = BitBoard.pegCount(pegs);
+        return remainingMoves <= MINIMUM_REMAINING_MOVES && (remainingPegs >> 1) <= TOTAL_PEGS;
     }
     
-    private Board rotation(Board b, Translator t) {
-        Board translatedBoard = new Board();
-        for (int i = 0; i < Board.ROWS; i++) {
-            for (int j = 0; j < Board.COLUMNS; j++) {
-                Peg p = b.get(i, j);
-                if (p.isDiscarded()) {
-                    translatedBoard.getPegById(t.translate(p, i, j)).discard();
+    private boolean canWin(long start) {
+        // depth first over a primitive stack; each position adds at most MOVES.size() boards
+        long[] boards = new long[MOVES.size() * BitBoard.SIZE];
+        int[] remainingMoves = new int[MOVES.size()];
+        EndgameDatabase endgame = MoveEvaluator.endgame;
+        int top = 0;
+        int expanded = 0;
+        long hits = 0, misses = 0;
+        boards[top++] = start;
+        try {
+            while (top > 0) {
+                if (++expanded % CANCELLATION_CHECK_INTERVAL == 0 && search.isCancelled()) {
+                    return false;
+                }
+                long board = boards[--top];
+                if (endgame.covers(board)) {
+                    if (endgame.isSolvable(board)) {
+                        return true;
+                    }
+                    continue;
+                }
+                SolvabilityOracle.Result known = oracle.lookup(board);
+                if (known == SolvabilityOracle.Result.UNKNOWN) {
+                    misses++;
+                } else {
+                    hits++;
+                }
+                if (known == SolvabilityOracle.Result.WIN) {
+                    return true;
+                } else if (known == SolvabilityOracle.Result.LOSE || pruning.isHopeless(board)) {
+                    continue;
+                }
+                int moveCount = MOVES.generate(board, remainingMoves);
+                if (moveCount != 0) {
+                    // pushed worst first so the preferred move is popped next
+                    ordering.order(remainingMoves, 0, moveCount, BitBoard.pegCount(board));
+                    for (int i = moveCount - 1; i >= 0; i--) {
+                        boards[top++] = MoveTable.jump(board, remainingMoves[i]);
+                    }
+                } else {
+                    if (BitBoard.pegCount(board) == 1) {
+                        return true;
+                    }
                 }
             }
+            return false;
+        } finally {
+            // the loop's counts are added once per search, not once per position
+            Metrics.NODES_EXPANDED.add(expanded);
+            Metrics.ORACLE_HITS.add(hits);
+            Metrics.ORACLE_MISSES.add(misses);
         }
-        return translatedBoard;
     }
 }
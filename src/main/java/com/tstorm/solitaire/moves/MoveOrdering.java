@@ -0,0 +1,157 @@
+package com.tstorm.solitaire.moves;
+
+import com.tstorm.solitaire.pieces.BitBoard;
+import com.tstorm.solitaire.pieces.Board;
+import com.tstorm.solitaire.pieces.MoveTable;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Decides which of a position's packed moves the search tries first. Strategies that learn
+ * are told about every move that led to a proven win through {@link #reward(int, int)}.
+ * Selected with {@code solitaire.solver.ordering}.
+ */
+public abstract class MoveOrdering {
+    public static final String PROPERTY = "solitaire.solver.ordering";
+
+    public enum Strategy {
+        NATURAL,
+        CENTER_BIAS,
+        HISTORY,
+        KILLER
+    }
+
+    private static final int HOLES = Board.ROWS * Board.COLUMNS;
+
+    public static MoveOrdering create() {
+        return create(Strategy.valueOf(System.getProperty(PROPERTY, Strategy.CENTER_BIAS.name())));
+    }
+
+    public static MoveOrdering create(Strategy strategy) {
+        switch (strategy) {
+            case NATURAL:
+                return new Natural();
+            case CENTER_BIAS:
+                return new CenterBias();
+            case HISTORY:
+                return new History();
+            case KILLER:
+                return new Killer();
+            default:
+                throw new IllegalArgumentException("Unsupported move ordering: " + strategy);
+        }
+    }
+
+    /**
+     * Higher scores are tried first. {@code depth} is the peg count of the position.
+     */
+    protected abstract int score(int move, int depth);
+
+    public void reward(int move, int depth) {
+    }
+
+    /**
+     * Sorts {@code count} moves starting at {@code offset} best first, in place.
+     */
+    public void order(int[] moves, int offset, int count, int depth) {
+        for (int i = offset + 1; i < offset + count; i++) {
+            int move = moves[i];
+            int score = score(move, depth);
+            int j = i - 1;
+            while (j >= offset && score(moves[j], depth) < score) {
+                moves[j + 1] = moves[j];
+                j--;
+            }
+            moves[j + 1] = move;
+        }
+    }
+
+    /**
+     * Table order, which is by landing hole.
+     */
+    private static class Natural extends MoveOrdering {
+        @Override
+        protected int score(int move, int depth) {
+            return 0;
+        }
+
+        @Override
+        public void order(int[] moves, int offset, int count, int depth) {
+        }
+    }
+
+    /**
+     * Jumps that bring the outermost pegs in first, landing as close to the center as
+     * possible. Stragglers on the arms are what usually strands a position.
+     */
+    private static class CenterBias extends MoveOrdering {
+        private static final int[] DISTANCE = new int[HOLES];
+        private static final int FARTHEST = Board.ROWS + Board.COLUMNS;
+
+        static {
+            int centerRow = BitBoard.CENTER / Board.COLUMNS, centerCol = BitBoard.CENTER % Board.COLUMNS;
+            for (int id = 0; id < HOLES; id++) {
+                DISTANCE[id] = Math.abs((id / Board.COLUMNS) - centerRow) + Math.abs((id % Board.COLUMNS) - centerCol);
+            }
+        }
+
+        @Override
+        protected int score(int move, int depth) {
+            return (DISTANCE[MoveTable.start(move)] << 4) | (FARTHEST - DISTANCE[MoveTable.end(move)]);
+        }
+    }
+
+    /**
+     * Jumps that most often led to wins so far, counted by start and landing hole, then as
+     * {@link CenterBias}.
+     */
+    private static class History extends CenterBias {
+        private static final int MAX_WINS = 1 << 22; // keeps the shifted count positive
+
+        private final AtomicIntegerArray wins = new AtomicIntegerArray(HOLES * HOLES);
+
+        @Override
+        protected int score(int move, int depth) {
+            return (Math.min(wins.get(index(move)), MAX_WINS) << 8) | super.score(move, depth);
+        }
+
+        @Override
+        public void reward(int move, int depth) {
+            wins.incrementAndGet(index(move));
+        }
+
+        private static int index(int move) {
+            return (MoveTable.start(move) * HOLES) + MoveTable.end(move);
+        }
+    }
+
+    /**
+     * The last two jumps that won at the same peg count first, then as {@link CenterBias}.
+     */
+    private static class Killer extends CenterBias {
+        private static final int NONE = -1;
+
+        private final AtomicIntegerArray killers = new AtomicIntegerArray((BitBoard.SIZE + 1) * 2);
+
+        Killer() {
+            for (int i = 0; i < killers.length(); i++) {
+                killers.set(i, NONE);
+            }
+        }
+
+        @Override
+        protected int score(int move, int depth) {
+            int bonus = killers.get(depth * 2) == move ? 2 : killers.get((depth * 2) + 1) == move ? 1 : 0;
+            return (bonus << 8) | super.score(move, depth);
+        }
+
+        @Override
+        public void reward(int move, int depth) {
+            int first = killers.get(depth * 2);
+            if (first != move) {
+                killers.set((depth * 2) + 1, first);
+                killers.set(depth * 2, move);
+            }
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.tstorm.solitaire.moves;
+
+import com.tstorm.solitaire.pieces.BitBoard;
+import com.tstorm.solitaire.pieces.Board;
+import com.tstorm.solitaire.pieces.MoveTable;
+import com.tstorm.solitaire.pieces.Symmetry;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cheap proofs that a position can never be reduced to one peg, checked before a position is
+ * searched. Enabled heuristics are listed in {@code solitaire.pruning} (comma separated,
+ * defaults to all of them) and each counts the positions it rejects.
+ * <ul>
+ *     <li>{@code POSITION_CLASS}: a jump flips the parity of all three diagonal classes at
+ *     once, so the class of a position fixes the row and column (mod 3) of its last peg. A
+ *     class with no such hole is lost.</li>
+ *     <li>{@code PAGODA}: Beasley's pagoda function for the central game. A jump never raises
+ *     a pagoda sum, so a position whose sum is below that of every possible last peg is
+ *     lost.</li>
+ *     <li>{@code EDGE_RESOURCES}: the same argument with a resource count of the holes next
+ *     to the edges, in all eight orientations.</li>
+ * </ul>
+ */
+public class Pruning {
+    public enum Heuristic {
+        POSITION_CLASS,
+        PAGODA,
+        EDGE_RESOURCES
+    }
+
+    public static final String PROPERTY = "solitaire.pruning";
+
+    private static final int[][] CENTRAL_PAGODA = {
+            { 0,  0, -1,  1, -1,  0,  0},
+            { 0,  0,  1,  1,  1,  0,  0},
+            {-1,  1,  0,  1,  0,  1, -1},
+            { 1,  1,  1,  2,  1,  1,  1},
+            {-1,  1,  0,  1,  0,  1, -1},
+            { 0,  0,  1,  1,  1,  0,  0},
+            { 0,  0, -1,  1, -1,  0,  0}
+    };
+    private static final int[][] EDGE_RESOURCE_COUNT = {
+            { 0,  0,  0,  0,  0,  0,  0},
+            { 0,  0,  0,  1,  0,  0,  0},
+            { 0,  1,  0,  1,  0,  1, -1},
+            { 0,  0,  0,  0,  0,  0,  0},
+            { 0,  1,  0,  1,  0,  1, -1},
+            { 0,  0,  0,  1,  0,  0,  0},
+            { 0,  0,  0,  0,  0,  0,  0}
+    };
+
+    private static final int CLASSES = 16;
+    private static final int ROW_STATES = 1 << Board.COLUMNS;
+    private static final long[] DIAGONALS = new long[3];
+    private static final long[] ANTI_DIAGONALS = new long[3];
+    private static final long[] TARGETS = new long[CLASSES];
+
+    static {
+        for (int id = 0; id < Board.ROWS * Board.COLUMNS; id++) {
+            if (BitBoard.isHole(id)) {
+                int row = id / Board.COLUMNS, col = id % Board.COLUMNS;
+                DIAGONALS[(row + col) % 3] |= BitBoard.bit(id);
+                ANTI_DIAGONALS[(row - col + Board.COLUMNS - 1) % 3] |= BitBoard.bit(id);
+            }
+        }
+        for (int id = 0; id < Board.ROWS * Board.COLUMNS; id++) {
+            if (BitBoard.isHole(id)) {
+                TARGETS[positionClass(BitBoard.bit(id))] |= BitBoard.bit(id);
+            }
+        }
+    }
+
+    private static class Pagoda {
+        private final Heuristic heuristic;
+        private final int[][] rows = new int[Board.ROWS][ROW_STATES];
+        private final int[] minimumTarget = new int[CLASSES];
+
+        Pagoda(Heuristic heuristic, int[] weights) {
+            this.heuristic = heuristic;
+            for (int row = 0; row < Board.ROWS; row++) {
+                for (int state = 0; state < ROW_STATES; state++) {
+                    for (int col = 0; col < Board.COLUMNS; col++) {
+                        if ((state & (1 << col)) != 0) {
+                            rows[row][state] += weights[(row * Board.COLUMNS) + col];
+                        }
+                    }
+                }
+            }
+            for (int c = 0; c < CLASSES; c++) {
+                minimumTarget[c] = Integer.MAX_VALUE;
+                for (long targets = TARGETS[c]; targets != 0; targets &= targets - 1) {
+                    minimumTarget[c] = Math.min(minimumTarget[c], weights[Long.numberOfTrailingZeros(targets)]);
+                }
+            }
+        }
+
+        int value(long pegs) {
+            int sum = 0;
+            for (int row = 0; row < Board.ROWS; row++) {
+                sum += rows[row][(int) (pegs >>> (row * Board.COLUMNS)) & (ROW_STATES - 1)];
+            }
+            return sum;
+        }
+    }
+
+    private final EnumSet<Heuristic> enabled;
+    private final List<Pagoda> pagodas = new ArrayList<>();
+    private final Map<Heuristic, LongAdder> cuts = new EnumMap<>(Heuristic.class);
+
+    public Pruning() {
+        this(parse(System.getProperty(PROPERTY)));
+    }
+
+    public Pruning(EnumSet<Heuristic> enabled) {
+        this.enabled = enabled;
+        for (Heuristic h : Heuristic.values()) {
+            cuts.put(h, new LongAdder());
+        }
+        if (enabled.contains(Heuristic.PAGODA)) {
+            addPagoda(Heuristic.PAGODA, weights(CENTRAL_PAGODA, Symmetry.IDENTITY));
+        }
+        if (enabled.contains(Heuristic.EDGE_RESOURCES)) {
+            for (int t = 0; t < Symmetry.COUNT; t++) {
+                addPagoda(Heuristic.EDGE_RESOURCES, weights(EDGE_RESOURCE_COUNT, t));
+            }
+        }
+    }
+
+    private static EnumSet<Heuristic> parse(String property) {
+        if (property == null) {
+            return EnumSet.allOf(Heuristic.class);
+        }
+        EnumSet<Heuristic> heuristics = EnumSet.noneOf(Heuristic.class);
+        for (String name : property.split(",")) {
+            if (!name.trim().isEmpty()) {
+                heuristics.add(Heuristic.valueOf(name.trim()));
+            }
+        }
+        return heuristics;
+    }
+
+    private static int[] weights(int[][] grid, int transform) {
+        int[] weights = new int[Board.ROWS * Board.COLUMNS];
+        for (int row = 0; row < Board.ROWS; row++) {
+            for (int col = 0; col < Board.COLUMNS; col++) {
+                int id = (row * Board.COLUMNS) + col;
+                weights[Symmetry.transformHole(id, transform)] = BitBoard.isHole(id) ? grid[row][col] : 0;
+            }
+        }
+        return weights;
+    }
+
+    private void addPagoda(Heuristic heuristic, int[] weights) {
+        // a function is only a pagoda if no jump can raise its sum on this layout
+        MoveTable table = MoveTable.CURRENT;
+        int[] moves = new int[table.size()];
+        for (int id = 0; id < Board.ROWS * Board.COLUMNS; id++) {
+            if (BitBoard.isHole(id)) {
+                // every jump that lands on id
+                int count = table.generateReverse(BitBoard.bit(id), moves);
+                for (int i = 0; i < count; i++) {
+                    int m = moves[i];
+                    if (weights[MoveTable.start(m)] + weights[MoveTable.jumped(m)] < weights[MoveTable.end(m)]) {
+                        System.err.println(String.format("Ignoring %s function, it is not a pagoda on this layout", heuristic));
+                        return;
+                    }
+                }
+            }
+        }
+        pagodas.add(new Pagoda(heuristic, weights));
+    }
+
+    private static int positionClass(long pegs) {
+        int diagonal0 = Long.bitCount(pegs & DIAGONALS[0]) & 1;
+        int diagonal1 = Long.bitCount(pegs & DIAGONALS[1]) & 1;
+        int diagonal2 = Long.bitCount(pegs & DIAGONALS[2]) & 1;
+        int anti0 = Long.bitCount(pegs & ANTI_DIAGONALS[0]) & 1;
+        int anti1 = Long.bitCount(pegs & ANTI_DIAGONALS[1]) & 1;
+        int anti2 = Long.bitCount(pegs & ANTI_DIAGONALS[2]) & 1;
+        return ((diagonal0 ^ diagonal1) << 3) | ((diagonal1 ^ diagonal2) << 2) | ((anti0 ^ anti1) << 1) | (anti1 ^ anti2);
+    }
+
+    /**
+     * Returns true if {@code pegs} provably cannot be reduced to a single peg.
+     */
+    public boolean isHopeless(long pegs) {
+        int positionClass = positionClass(pegs);
+        if (TARGETS[positionClass] == 0) {
+            if (enabled.contains(Heuristic.POSITION_CLASS)) {
+                cuts.get(Heuristic.POSITION_CLASS).increment();
+                return true;
+            }
+            return false;
+        }
+        for (Pagoda pagoda : pagodas) {
+            if (pagoda.value(pegs) < pagoda.minimumTarget[positionClass]) {
+                cuts.get(pagoda.heuristic).increment();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public long cuts(Heuristic heuristic) {
+        return cuts.get(heuristic).sum();
+    }
+}
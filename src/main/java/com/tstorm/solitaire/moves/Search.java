@@ -0,0 +1,100 @@
+package com.tstorm.solitaire.moves;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shared state of one suggestion request. Every {@link MoveEvaluator} of the request polls it
+ * and stops expanding once the request is cancelled or its deadline has passed, so the
+ * fork/join tree unwinds with whatever it has proven so far. It also owns the request's
+ * visited set, so concurrent requests on one node never see each other's positions. The
+ * sets are large, so a finished request hands its set on to a later one with
+ * {@link #release()} rather than leaving it to the collector.
+ */
+public class Search {
+    public static final String TIMEOUT_PROPERTY = "solitaire.suggestion.timeoutMillis";
+    public static final long DEFAULT_TIMEOUT = 30 * 1000;
+
+    // visited sets of finished requests, cleared, as many as have ever been in use at once
+    private static final Queue<TranspositionTable> spareTables = new ConcurrentLinkedQueue<>();
+
+    private final long deadline;
+    private final boolean bounded;
+    private volatile boolean cancelled = false;
+    private volatile TranspositionTable visited;
+    private boolean released = false;
+
+    public Search() {
+        this(Long.getLong(TIMEOUT_PROPERTY, DEFAULT_TIMEOUT));
+    }
+
+    public Search(long timeoutMillis) {
+        this(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis), true);
+    }
+
+    private Search(long deadline, boolean bounded) {
+        this.deadline = deadline;
+        this.bounded = bounded;
+    }
+
+    /**
+     * A search without a deadline, for offline tools. It only stops when cancelled.
+     */
+    public static Search unbounded() {
+        return new Search(0, false);
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        if (!cancelled && bounded && System.nanoTime() - deadline >= 0) {
+            cancelled = true;
+        }
+        return cancelled;
+    }
+
+    /**
+     * Positions some task of this request has already taken on, taken from a finished
+     * request or allocated on first use.
+     */
+    public TranspositionTable getVisited() {
+        TranspositionTable table = visited;
+        if (table == null) {
+            synchronized (this) {
+                table = visited;
+                if (table == null) {
+                    table = spareTables.poll();
+                    visited = table = table == null ? new TranspositionTable() : table;
+                }
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Hands the visited set on to a later request once this one is over. A task of this
+     * request that is still unwinding may leave a stray key in it, which only makes the later
+     * request search that position itself rather than count on another task for it.
+     */
+    public void release() {
+        TranspositionTable table;
+        synchronized (this) {
+            table = released ? null : visited;
+            released = true;
+        }
+        if (table != null) {
+            table.clear();
+            spareTables.add(table);
+        }
+    }
+
+    public long remainingMillis() {
+        if (!bounded) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+    }
+}
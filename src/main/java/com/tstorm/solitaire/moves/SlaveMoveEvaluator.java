@@ -1,20 +1,10 @@
 package com.tstorm.solitaire.moves;
 
-import com.tstorm.solitaire.pieces.Board;
-
 import java.util.Optional;
 
 public class SlaveMoveEvaluator extends MoveEvaluator {
-    private final Board board;
-    
-    public SlaveMoveEvaluator(Board board, Optional<Move> move) {
-        super(move);
-        this.board = board;
-    }
-    
-    @Override
-    public Board getBoard() {
-        return board;
+    public SlaveMoveEvaluator(long pegs, Optional<Move> move, Search search) {
+        super(pegs, move, search);
     }
     
     @Override
@@ -0,0 +1,80 @@
+package com.tstorm.solitaire.moves;
+
+import com.tstorm.solitaire.pieces.Symmetry;
+
+/**
+ * Remembers which positions the search has proven winnable or hopeless, keyed by canonical
+ * board key. Unlike the visited set it is never cleared, so what one suggestion request
+ * proves answers the same position (or any symmetric one) in later requests and games.
+ * Sized from {@code solitaire.oracle.megabytes}.
+ */
+public class SolvabilityOracle {
+    public enum Result {
+        UNKNOWN,
+        WIN,
+        LOSE
+    }
+
+    public static final String MEGABYTES_PROPERTY = "solitaire.oracle.megabytes";
+    public static final int DEFAULT_MEGABYTES = 64;
+
+    private static final Result[] RESULTS = Result.values();
+
+    /**
+     * Told about every result recorded on this node, for sharing it with other nodes.
+     */
+    public interface Listener {
+        void recorded(long key, Result result);
+    }
+
+    private final TranspositionTable table;
+    private volatile Listener listener;
+
+    public SolvabilityOracle() {
+        this(Integer.getInteger(MEGABYTES_PROPERTY, DEFAULT_MEGABYTES));
+    }
+
+    public SolvabilityOracle(int megabytes) {
+        table = new TranspositionTable(megabytes);
+    }
+
+    public Result lookup(long pegs) {
+        return lookupCanonical(Symmetry.canonical(pegs));
+    }
+
+    public Result lookupCanonical(long key) {
+        int value = table.get(key);
+        return value == TranspositionTable.ABSENT ? Result.UNKNOWN : RESULTS[value];
+    }
+
+    public void record(long pegs, boolean win) {
+        recordCanonical(Symmetry.canonical(pegs), win ? Result.WIN : Result.LOSE);
+    }
+
+    public void recordCanonical(long key, Result result) {
+        if (result != Result.UNKNOWN) {
+            table.put(key, result.ordinal());
+            Listener listener = this.listener;
+            if (listener != null) {
+                listener.recorded(key, result);
+            }
+        }
+    }
+
+    /**
+     * Records a result proven on another node, without passing it on to the listener.
+     */
+    public void recordRemote(long key, Result result) {
+        if (result != Result.UNKNOWN) {
+            table.put(key, result.ordinal());
+        }
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public void clear() {
+        table.clear();
+    }
+}
@@ -0,0 +1,127 @@
+package com.tstorm.solitaire.moves;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed size, lock-free hash table of canonical board keys backed by a single
+ * {@link AtomicLongArray}. Each slot packs a key in its low {@link #KEY_BITS} bits and an
+ * optional small value above them, so the table works both as a visited set and as a
+ * key to result map. Keys are grouped into buckets of {@link #BUCKET_SIZE} slots; when
+ * a bucket is full the key with the fewest pegs is evicted, since its subtree is the
+ * cheapest one to search again.
+ * <p>
+ * Slots only ever change by compare-and-set, so a lost race just rescans the bucket. Two
+ * racing evictions can at worst both report a key as new, which costs a duplicate subtree
+ * and never a missed one.
+ */
+public class TranspositionTable {
+    public static final String MEGABYTES_PROPERTY = "solitaire.transpositions.megabytes";
+    public static final int DEFAULT_MEGABYTES = 32;
+
+    private static final int BUCKET_SIZE = 4;
+    private static final long EMPTY = 0L; // no reachable position has zero pegs
+    private static final int KEY_BITS = 49;
+    private static final long KEY_MASK = (1L << KEY_BITS) - 1;
+
+    public static final int ABSENT = -1;
+
+    private final AtomicLongArray slots;
+    private final int bucketMask;
+
+    public TranspositionTable() {
+        this(Integer.getInteger(MEGABYTES_PROPERTY, DEFAULT_MEGABYTES));
+    }
+
+    public TranspositionTable(int megabytes) {
+        long capacity = Long.highestOneBit(Math.max(1L, (megabytes * 1024L * 1024L) / Long.BYTES));
+        int buckets = (int) Math.max(1, Math.min(capacity, 1 << 30) / BUCKET_SIZE);
+        slots = new AtomicLongArray(buckets * BUCKET_SIZE);
+        bucketMask = buckets - 1;
+    }
+
+    /**
+     * Records {@code key} and returns true if it was not already in the table.
+     */
+    public boolean add(long key) {
+        return put(key, 0, false);
+    }
+
+    /**
+     * Stores {@code value} (0 to 127) for {@code key}, replacing any value it already had.
+     */
+    public void put(long key, int value) {
+        put(key, value, true);
+    }
+
+    private boolean put(long key, int value, boolean replace) {
+        long entry = key | ((long) value << KEY_BITS);
+        int first = bucket(key) * BUCKET_SIZE;
+        while (true) {
+            int victim = first;
+            long victimEntry = slots.get(first);
+            boolean claimed = false;
+            for (int i = first; i < first + BUCKET_SIZE && !claimed; i++) {
+                long slot = slots.get(i);
+                if ((slot & KEY_MASK) == key) {
+                    if (!replace || slot == entry) {
+                        return false;
+                    }
+                    victim = i;
+                    victimEntry = slot;
+                    claimed = true;
+                } else if (slot == EMPTY) {
+                    victim = i;
+                    victimEntry = EMPTY;
+                    claimed = true;
+                } else if (pegs(slot) < pegs(victimEntry)) {
+                    victim = i;
+                    victimEntry = slot;
+                }
+            }
+            if (slots.compareAndSet(victim, victimEntry, entry)) {
+                return (victimEntry & KEY_MASK) != key;
+            }
+        }
+    }
+
+    /**
+     * The value stored for {@code key}, or {@link #ABSENT}.
+     */
+    public int get(long key) {
+        int first = bucket(key) * BUCKET_SIZE;
+        for (int i = first; i < first + BUCKET_SIZE; i++) {
+            long slot = slots.get(i);
+            if ((slot & KEY_MASK) == key) {
+                return (int) (slot >>> KEY_BITS);
+            }
+        }
+        return ABSENT;
+    }
+
+    public boolean contains(long key) {
+        return get(key) != ABSENT;
+    }
+
+    /**
+     * Empties the table with plain stores, so a thread that uses it next must get it through
+     * something that orders memory, such as a concurrent queue.
+     */
+    public void clear() {
+        for (int i = 0; i < slots.length(); i++) {
+            slots.setPlain(i, EMPTY);
+        }
+    }
+
+    public int capacity() {
+        return slots.length();
+    }
+
+    private static int pegs(long slot) {
+        return Long.bitCount(slot & KEY_MASK);
+    }
+
+    private int bucket(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & bucketMask;
+    }
+}
@@ -0,0 +1,59 @@
+package com.tstorm.solitaire.pieces;
+
+import com.tstorm.solitaire.App;
+import com.tstorm.solitaire.moves.Move;
+
+import java.util.List;
+
+/**
+ * Bitboard core of the game. A position is a single {@code long} where bit {@code id}
+ * ({@code row * 7 + col}) is set when the hole holds a peg, so copying a board is an
+ * assignment and a jump (or its undo) is a single xor.
+ */
+public final class BitBoard {
+    public static final long ENGLISH = 0x70E7FFFFCE1CL;
+    public static final long EUROPEAN = 0x71F7FFFFDF1CL;
+
+    public static final long HOLES = App.EUROPEAN ? EUROPEAN : ENGLISH;
+    public static final int SIZE = Long.bitCount(HOLES);
+    public static final int CENTER = 24;
+
+    private BitBoard() {
+    }
+
+    public static long bit(int id) {
+        return 1L << id;
+    }
+
+    public static boolean isHole(int id) {
+        return id >= 0 && id < Board.ROWS * Board.COLUMNS && (HOLES & bit(id)) != 0;
+    }
+
+    public static boolean hasPeg(long pegs, int id) {
+        return (pegs & bit(id)) != 0;
+    }
+
+    public static int pegCount(long pegs) {
+        return Long.bitCount(pegs);
+    }
+
+    public static long jumpMask(int start, int jumped, int end) {
+        return bit(start) | bit(jumped) | bit(end);
+    }
+
+    /**
+     * Applies a jump. Since the mask flips exactly the three holes involved, calling this
+     * again with the same arguments undoes the jump.
+     */
+    public static long jump(long pegs, int start, int jumped, int end) {
+        return pegs ^ jumpMask(start, jumped, end);
+    }
+
+    public static long jump(long pegs, Move m) {
+        return jump(pegs, m.start(), m.jumped(), m.end());
+    }
+
+    public static List<Move> getMoves(long pegs) {
+        return MoveTable.CURRENT.getMoves(pegs);
+    }
+}
@@ -1,41 +1,24 @@
 package com.tstorm.solitaire.pieces;
 
-import com.tstorm.solitaire.App;
 import com.tstorm.solitaire.moves.Move;
 
-import java.util.*;
+import java.util.List;
 
-public class Board implements Comparable<Board> {
-    private enum Direction {
-        LEFT (0),
-        UP (1),
-        RIGHT (2),
-        DOWN (3);
-        
-        private final int index;
-        
-        Direction(int index) {
-            this.index = index;
-        }
-        
-        public int index() {
-            return index;
-        }
-    }
-    
+public final class Board implements Comparable<Board> {
     public static final int ROWS = 7;
     public static final int COLUMNS = 7;
 
     private final Peg[][] board = new Peg[ROWS][COLUMNS];
-    private final Map<Integer, Peg> emptyHoles = new HashMap<>(ROWS * COLUMNS);
+    private long pegs = BitBoard.HOLES;
     
     public Board(Board b) {
+        this(b.pegs());
+    }
+    
+    public Board(long pegs) {
         this();
-        for (int id : b.emptyHoles().keySet()) {
-            Peg peg = getPegById(id);
-            peg.discard();
-            this.emptyHoles.put(peg.getId(), peg);
-        }
+        this.pegs = pegs;
+        syncPegs();
     }
     
     public Board(Peg[][] pegs) {
@@ -43,27 +26,18 @@ public class Board implements Comparable<Board> {
         for (Peg[] row : pegs) {
             for (Peg peg : row) {
                 if (peg.isDiscarded()) {
-                    Peg p = getPegById(peg.getId());
-                    p.discard();
-                    emptyHoles.put(p.getId(), p);
+                    discard(peg.getId());
                 }
             }
         }
     }
     
     public Board(boolean cheat) {
-        this();
-        for (int i = 0; i < ROWS; i++) {
-            for (int j = 0; j < COLUMNS; j++) {
-                board[i][j].discard();
-                emptyHoles.put(board[i][j].getId(), board[i][j]);
-            }
-        }
+        this(0L);
         int[] pegs = {9, 16, 18, 22, 24, 25, 30, 38};
         for (int id : pegs) {
-            Peg p = getPegById(id);
-            p.putBack();
-            emptyHoles.remove(id, p);
+            this.pegs |= BitBoard.bit(id);
+            getPegById(id).putBack();
         }
     }
     
@@ -98,18 +72,22 @@ public class Board implements Comparable<Board> {
     }
 
     private void cutOutCorners() {
-        int[] rowCorners = {0, 1, ROWS - 2, ROWS - 1};
-        int[] colCorners = {0, 1, COLUMNS - 2, COLUMNS - 1};
-        for (int i : rowCorners) {
-            for (int j : colCorners) {
-                board[i][j].setEnabled(false);
+        for (Peg[] row : board) {
+            for (Peg peg : row) {
+                peg.setEnabled(BitBoard.isHole(peg.getId()));
             }
         }
-        if (App.EUROPEAN) {
-            board[1][1].setEnabled(true);
-            board[1][COLUMNS-2].setEnabled(true);
-            board[ROWS-2][1].setEnabled(true);
-            board[ROWS-2][COLUMNS-2].setEnabled(true);
+    }
+    
+    private void syncPegs() {
+        for (Peg[] row : board) {
+            for (Peg peg : row) {
+                if (peg.isEnabled() && !BitBoard.hasPeg(pegs, peg.getId())) {
+                    peg.discard();
+                } else {
+                    peg.putBack();
+                }
+            }
         }
     }
 
@@ -125,81 +103,41 @@ public class Board implements Comparable<Board> {
         return board;
     }
     
-    public boolean pegIsEmpty(int id) {
-        return emptyHoles.containsKey(id);
+    public long pegs() {
+        return pegs;
     }
     
-    public Map<Integer, Peg> emptyHoles() {
-        return emptyHoles;
+    public boolean pegIsEmpty(int id) {
+        return BitBoard.isHole(id) && !BitBoard.hasPeg(pegs, id);
     }
     
     public int remainingPegs() {
-        final int TOTAL_PEGS = App.EUROPEAN ? 37 : 33;
-        return TOTAL_PEGS - emptyHoles.keySet().size();
+        return BitBoard.pegCount(pegs);
     }
     
     public static final int FALSE = 0, TRUE = 1;
     
     @Override
     public int compareTo(Board b) {
-        if (emptyHoles.size() != b.emptyHoles().size()) {
-            return FALSE;
-        }
-        for (int id : emptyHoles.keySet()) {
-            if (!b.pegIsEmpty(id)) {
-                return FALSE;
-            }
-        }
-        return TRUE;
+        return pegs == b.pegs() ? TRUE : FALSE;
+    }
+    
+    public void discard(int id) {
+        pegs &= ~BitBoard.bit(id);
+        getPegById(id).discard();
     }
     
     public void jump(int firstSelection, int jumpedPeg, int secondSelection) {
         // move the selected peg to the position of the second selection
         // and remove the peg in the middle
-        Peg first = getPegById(firstSelection);
-        first.discard();
-        emptyHoles.put(firstSelection, first);
-        Peg jumped = getPegById(jumpedPeg);
-        jumped.discard();
-        emptyHoles.put(jumpedPeg, jumped);
-        Peg second = getPegById(secondSelection);
-        second.putBack();
-        emptyHoles.remove(secondSelection);
+        pegs = BitBoard.jump(pegs, firstSelection, jumpedPeg, secondSelection);
+        getPegById(firstSelection).discard();
+        getPegById(jumpedPeg).discard();
+        getPegById(secondSelection).putBack();
     }
     
     public List<Move> getMoves() {
-        List<Move> moves = new ArrayList<>();
-        Map<Integer, Peg> empties = emptyHoles;
-        for (int pegId : empties.keySet()) {
-            Peg p = empties.get(pegId);
-            for (Direction d : Direction.values()) {
-                Move m;
-                if ((m = canMove(p, d)) != null) {
-                    moves.add(m);
-                }
-            }
-        }
-        return moves;
-    }
-    
-    private Move canMove(Peg peg, Direction direction) {
-        Optional<Peg> firstNeighbor = peg.getNeighbors().get(direction.index());
-        if (isValidPeg(firstNeighbor)) {
-            Optional<Peg> secondNeighbor = firstNeighbor.get().getNeighbors().get(direction.index());
-            if (isValidPeg(secondNeighbor)) {
-                return new Move(secondNeighbor.get(), firstNeighbor.get(), peg);
-            }
-        }
-        return null;
-    }
-    
-    private boolean isValidPeg(Optional<Peg> peg) {
-        if (peg.isPresent()) {
-            Peg p = peg.get();
-            return !p.isDiscarded() && p.isEnabled();
-        } else {
-            return false;
-        }
+        return BitBoard.getMoves(pegs);
     }
     
     public void print() {
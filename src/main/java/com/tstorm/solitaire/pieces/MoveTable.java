@@ -0,0 +1,147 @@
+package com.tstorm.solitaire.pieces;
+
+import com.tstorm.solitaire.App;
+import com.tstorm.solitaire.moves.Move;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Every jump a layout allows, precomputed once. Moves are handed out packed into an int
+ * ({@code start | jumped << 8 | end << 16}) so generating them allocates nothing.
+ */
+public final class MoveTable {
+    private static final int[] DIRECTIONS = {-1, -Board.COLUMNS, 1, Board.COLUMNS};
+    private static final int ID_BITS = 8, ID_MASK = (1 << ID_BITS) - 1;
+
+    public static final MoveTable ENGLISH = new MoveTable(BitBoard.ENGLISH);
+    public static final MoveTable EUROPEAN = new MoveTable(BitBoard.EUROPEAN);
+    public static final MoveTable CURRENT = App.EUROPEAN ? EUROPEAN : ENGLISH;
+
+    private final int[] moves;
+    private final long[] masks;
+    private final long[] sources;
+    private final long[] targets;
+
+    private MoveTable(long holes) {
+        List<Integer> table = new ArrayList<>();
+        for (int end = 0; end < Board.ROWS * Board.COLUMNS; end++) {
+            for (int direction : DIRECTIONS) {
+                int jumped = end + direction;
+                int start = jumped + direction;
+                if (isHole(holes, end) && isHole(holes, jumped) && isHole(holes, start) && sameLine(start, end)) {
+                    table.add(pack(start, jumped, end));
+                }
+            }
+        }
+        moves = new int[table.size()];
+        masks = new long[table.size()];
+        sources = new long[table.size()];
+        targets = new long[table.size()];
+        for (int i = 0; i < moves.length; i++) {
+            int m = table.get(i);
+            moves[i] = m;
+            masks[i] = BitBoard.jumpMask(start(m), jumped(m), end(m));
+            sources[i] = BitBoard.bit(start(m)) | BitBoard.bit(jumped(m));
+            targets[i] = BitBoard.bit(end(m));
+        }
+    }
+
+    private static boolean isHole(long holes, int id) {
+        return id >= 0 && id < Board.ROWS * Board.COLUMNS && (holes & BitBoard.bit(id)) != 0;
+    }
+
+    private static boolean sameLine(int start, int end) {
+        return start / Board.COLUMNS == end / Board.COLUMNS || start % Board.COLUMNS == end % Board.COLUMNS;
+    }
+
+    /**
+     * The number of jumps on the layout, which is also the largest buffer
+     * {@link #generate(long, int[])} will ever need.
+     */
+    public int size() {
+        return moves.length;
+    }
+
+    /**
+     * Writes the packed legal moves of {@code pegs} into {@code buffer} and returns how many there are.
+     */
+    public int generate(long pegs, int[] buffer) {
+        return generate(pegs, buffer, 0);
+    }
+
+    /**
+     * Like {@link #generate(long, int[])} but writes the moves starting at {@code offset}.
+     */
+    public int generate(long pegs, int[] buffer, int offset) {
+        int count = 0;
+        for (int i = 0; i < moves.length; i++) {
+            if ((pegs & masks[i]) == sources[i]) {
+                buffer[offset + count++] = moves[i];
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Like {@link #generate(long, int[])} but for jumps played backwards: each returned move
+     * has a peg at its end and holes at its start and jumped positions, and applying it with
+     * {@link #jump(long, int)} yields a position that plays that jump into {@code pegs}.
+     */
+    public int generateReverse(long pegs, int[] buffer) {
+        int count = 0;
+        for (int i = 0; i < moves.length; i++) {
+            if ((pegs & masks[i]) == targets[i]) {
+                buffer[count++] = moves[i];
+            }
+        }
+        return count;
+    }
+
+    public boolean hasMoves(long pegs) {
+        for (int i = 0; i < moves.length; i++) {
+            if ((pegs & masks[i]) == sources[i]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public List<Move> getMoves(long pegs) {
+        List<Move> legal = new ArrayList<>();
+        for (int i = 0; i < moves.length; i++) {
+            if ((pegs & masks[i]) == sources[i]) {
+                legal.add(toMove(moves[i]));
+            }
+        }
+        return legal;
+    }
+
+    public static int pack(int start, int jumped, int end) {
+        return start | (jumped << ID_BITS) | (end << (ID_BITS * 2));
+    }
+
+    public static int pack(Move m) {
+        return pack(m.start(), m.jumped(), m.end());
+    }
+
+    public static int start(int move) {
+        return move & ID_MASK;
+    }
+
+    public static int jumped(int move) {
+        return (move >>> ID_BITS) & ID_MASK;
+    }
+
+    public static int end(int move) {
+        return (move >>> (ID_BITS * 2)) & ID_MASK;
+    }
+
+    public static long jump(long pegs, int move) {
+        return BitBoard.jump(pegs, start(move), jumped(move), end(move));
+    }
+
+    public static Move toMove(int move) {
+        return new Move(start(move), jumped(move), end(move));
+    }
+}
@@ -0,0 +1,104 @@
+package com.tstorm.solitaire.pieces;
+
+/**
+ * The eight symmetries of the square board (four rotations, four reflections) applied to
+ * bitboards. Each transform is precomputed per row so mapping a position costs seven
+ * table lookups instead of a walk over its pegs.
+ */
+public final class Symmetry {
+    public static final int IDENTITY = 0;
+    public static final int COUNT = 8;
+
+    private static final int SIZE = Board.ROWS;
+    private static final int ROW_STATES = 1 << Board.COLUMNS;
+    private static final int[][] HOLES = new int[COUNT][Board.ROWS * Board.COLUMNS];
+    private static final long[][][] ROWS = new long[COUNT][Board.ROWS][ROW_STATES];
+
+    static {
+        for (int t = 0; t < COUNT; t++) {
+            for (int row = 0; row < Board.ROWS; row++) {
+                for (int col = 0; col < Board.COLUMNS; col++) {
+                    HOLES[t][(row * Board.COLUMNS) + col] = map(t, row, col);
+                }
+            }
+            for (int row = 0; row < Board.ROWS; row++) {
+                for (int state = 0; state < ROW_STATES; state++) {
+                    long mapped = 0;
+                    for (int col = 0; col < Board.COLUMNS; col++) {
+                        if ((state & (1 << col)) != 0) {
+                            mapped |= BitBoard.bit(HOLES[t][(row * Board.COLUMNS) + col]);
+                        }
+                    }
+                    ROWS[t][row][state] = mapped;
+                }
+            }
+        }
+    }
+
+    private Symmetry() {
+    }
+
+    private static int map(int transform, int row, int col) {
+        final int last = SIZE - 1;
+        switch (transform) {
+            case 0: return (row * SIZE) + col;                   // identity
+            case 1: return (col * SIZE) + (last - row);          // 90 degrees
+            case 2: return ((last - row) * SIZE) + (last - col); // 180 degrees
+            case 3: return ((last - col) * SIZE) + row;          // 270 degrees
+            case 4: return ((last - row) * SIZE) + col;          // horizontal reflection
+            case 5: return (row * SIZE) + (last - col);          // vertical reflection
+            case 6: return (col * SIZE) + row;                   // main diagonal
+            case 7: return ((last - col) * SIZE) + (last - row); // anti diagonal
+            default: throw new IllegalArgumentException("Unknown transform: " + transform);
+        }
+    }
+
+    public static long transform(long pegs, int transform) {
+        long[][] rows = ROWS[transform];
+        long mapped = 0;
+        for (int row = 0; row < Board.ROWS; row++) {
+            mapped |= rows[row][(int) (pegs >>> (row * Board.COLUMNS)) & (ROW_STATES - 1)];
+        }
+        return mapped;
+    }
+
+    public static int transformHole(int id, int transform) {
+        return HOLES[transform][id];
+    }
+
+    /**
+     * The transform that undoes {@code transform}: the quarter turns swap, everything else
+     * is its own inverse.
+     */
+    public static int inverse(int transform) {
+        return transform == 1 ? 3 : transform == 3 ? 1 : transform;
+    }
+
+    /**
+     * The smallest of the eight images of {@code pegs}, so that every symmetric variant of
+     * a position shares one key.
+     */
+    public static long canonical(long pegs) {
+        long min = pegs;
+        for (int t = 1; t < COUNT; t++) {
+            min = Math.min(min, transform(pegs, t));
+        }
+        return min;
+    }
+
+    /**
+     * The transform that maps {@code pegs} onto {@link #canonical(long)}.
+     */
+    public static int canonicalTransform(long pegs) {
+        long min = pegs;
+        int best = IDENTITY;
+        for (int t = 1; t < COUNT; t++) {
+            long mapped = transform(pegs, t);
+            if (mapped < min) {
+                min = mapped;
+                best = t;
+            }
+        }
+        return best;
+    }
+}
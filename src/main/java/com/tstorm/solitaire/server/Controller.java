@@ -1,106 +1,187 @@
 package com.tstorm.solitaire.server;
 
-import com.tstorm.solitaire.App;
-import com.tstorm.solitaire.moves.MasterMoveEvaluator;
+import com.tstorm.solitaire.metrics.Metrics;
+import com.tstorm.solitaire.moves.Search;
+import com.tstorm.solitaire.pieces.Board;
 import com.tstorm.solitaire.pieces.Peg;
 import org.eclipse.jetty.websocket.api.Session;
 import org.eclipse.jetty.websocket.api.annotations.OnWebSocketClose;
 import org.eclipse.jetty.websocket.api.annotations.OnWebSocketConnect;
 import org.eclipse.jetty.websocket.api.annotations.OnWebSocketMessage;
 import org.eclipse.jetty.websocket.api.annotations.WebSocket;
-import org.json.JSONException;
-import org.json.JSONObject;
 
 import java.io.IOException;
 import java.net.ConnectException;
 import java.net.InetAddress;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * Hosts any number of games at once, one per websocket session, all sharing one
+ * {@link Master} for suggestions. The page sends {@code pegN} to select or jump to peg N,
+ * {@code suggestion} and {@code resync}; the server answers with the messages of
+ * {@link MessageEncoder}.
+ */
 @WebSocket
 public class Controller {
+    private static final int[] NONE = {};
+
     private interface Strategy {
-        String process(String message) throws JSONException;
+        /**
+         * Applies {@code message} to the game and returns the reply, or null if the reply
+         * will be sent later.
+         */
+        String process(Game game, String message);
     }
 
     private class FirstMoveStrategy implements Strategy {
         @Override
-        public String process(String message) throws JSONException {
+        public String process(Game game, String message) {
             final int id = Integer.parseInt(message.substring("peg".length()));
-            Peg peg = model.getPegById(id);
-            peg.discard();
-            model.getBoard().emptyHoles().put(id, peg);
-            return message;
+            game.model.getBoard().discard(id);
+            game.strategy = gamePlay;
+            return MessageEncoder.delta(++game.seq, new int[]{id}, NONE, -1, false);
         }
     }
 
     private class GamePlayStrategy implements Strategy {
         @Override
-        public String process(String message) throws JSONException {
+        public String process(Game game, String message) {
+            Model model = game.model;
             // extract id as an int ("pegx" - "peg" = x)
             if (message.equals("suggestion")) {
-                return master.evaluate(model.getBoard());
+                Search search = new Search();
+                master.cancel(game.suggestion);
+                game.suggestion = search;
+                int seq = game.seq;
+                long start = System.nanoTime();
+                AtomicBoolean proven = new AtomicBoolean();
+                // searched off the websocket thread, on a copy the game's moves cannot change
+                master.evaluateAsync(new Board(model.getBoard()), search, (move, winning) -> {
+                    if (winning && !proven.getAndSet(true)) {
+                        Metrics.FIRST_SUGGESTION_MILLIS.record((System.nanoTime() - start) / 1000000);
+                    }
+                    game.send(MessageEncoder.suggestion(seq, move, winning));
+                }).whenComplete((moves, failure) -> {
+                    if (failure != null) {
+                        failure.printStackTrace();
+                    }
+                    // sent even when the search failed, so the page stops waiting for it
+                    Metrics.SUGGESTION_MILLIS.record((System.nanoTime() - start) / 1000000);
+                    game.send(MessageEncoder.complete(seq));
+                });
+                return null;
             } else {
                 final int id = Integer.parseInt(message.substring("peg".length()));
                 if (model.hasSelection()) {
-                    return tryJump(model.getSelection().get(), model.getPegById(id));
+                    return tryJump(game, model.getSelection().get(), model.getPegById(id));
                 } else {
-                    return trySelect(id, message);
+                    return trySelect(game, id);
                 }
             }
         }
     }
-    
-    private final Object lock = new Object();
-    private volatile boolean gameIsRunning = false;
+
+    /**
+     * The state of one session's game, and the sequence number of the last delta sent.
+     */
+    private class Game {
+        final Session user;
+        final Model model = new Model();
+        Strategy strategy = firstMove;
+        int seq = 0;
+        volatile Search suggestion;
+
+        Game(Session user) {
+            this.user = user;
+        }
+
+        /**
+         * Queues {@code message} for the page without waiting for it to be written. Suggestions
+         * are sent from the threads that prove them, so messages are queued one at a time, in
+         * the order they were made.
+         */
+        synchronized void send(String message) {
+            Metrics.WEBSOCKET_BYTES_SENT.add(message.length());
+            user.getRemote().sendStringByFuture(message);
+        }
+
+        int selected() {
+            return model.getSelection().map(Peg::getId).orElse(-1);
+        }
+
+        String board() {
+            return MessageEncoder.board(seq, model.getBoard(), selected());
+        }
+    }
     
     private final Master master;
-    private Model model = new Model();
-    private Strategy strategy = new FirstMoveStrategy();
+    private final Strategy firstMove = new FirstMoveStrategy();
+    private final Strategy gamePlay = new GamePlayStrategy();
+    private final Map<Session, Game> games = new ConcurrentHashMap<>();
     
     public Controller() {
         master = new Master().startListening();
     }
 
     @OnWebSocketConnect
-    public void onConnect(Session user) throws IOException {
-        gameIsRunning = true;
-        user.getRemote().sendString(App.createBoard(model.getBoard()));
+    public void onConnect(Session user) {
+        Game game = new Game(user);
+        games.put(user, game);
+        game.send(game.board());
     }
 
     @OnWebSocketMessage
-    public void onMessage(Session user, String message) throws IOException, JSONException {
-        String result = strategy.process(message);
-        if (strategy instanceof FirstMoveStrategy) {
-            strategy = new GamePlayStrategy();
+    public void onMessage(Session user, String message) {
+        Game game = games.get(user);
+        if (game == null) {
+            return; // already closed
+        }
+        if (message.equals("resync")) {
+            game.send(game.board());
+            return;
+        }
+        if (!message.equals("suggestion")) {
+            // the board is about to change, so this game's running suggestion is already stale
+            master.cancel(game.suggestion);
+        }
+        String reply = game.strategy.process(game, message);
+        if (reply != null) {
+            game.send(reply);
         }
-        user.getRemote().sendString(result);
     }
 
     @OnWebSocketClose
     public void onClose(Session user, int statusCode, String reason) {
-        model = new Model();
-        strategy = new FirstMoveStrategy();
+        Game game = games.remove(user);
+        if (game != null) {
+            master.cancel(game.suggestion);
+        }
         System.out.println(String.format("Connection with %s closed with code %d (%s)",
                 user.getRemoteAddress().toString(), statusCode, reason));
-        gameIsRunning = false;
-        master.shutdown();
     }
     
-    public void addSlave(String name, InetAddress node) {
-        new Thread(() -> {
+    /**
+     * Connects to a slave on a virtual thread, even in the middle of a game, and connects again
+     * whenever the master loses it, so a slave that is restarted rejoins on its own.
+     */
+    public void addSlave(String name, InetAddress node, int port) {
+        Thread.ofVirtual().name("join-" + name).start(() -> {
             final int MAX_TRIES = 60;
             int tries = 0;
             while (tries++ < MAX_TRIES) {
                 try {
-                    Slave s = new Slave(node);
-                    if (!gameIsRunning) {
-                        synchronized (lock) {
-                            master.addSlave(s);
-                            return; // success
-                        }
-                    }
+                    Slave s = new Slave(node, port);
+                    master.addSlave(s);
+                    System.out.println(String.format("%s joined", name));
+                    s.awaitClose();
+                    System.out.println(String.format("%s left", name));
+                    tries = 0;
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                    return;
                 } catch (ConnectException e) {
                     try {
                         Thread.sleep(1000 * 5);
@@ -111,22 +192,24 @@ public class Controller {
                     e.printStackTrace();
                 }
             }
-            System.err.println(String.format("Unable to connect with %s @ %s", name, node.getHostAddress()));
-        }).start();
+            System.err.println(String.format("Unable to connect with %s @ %s:%d", name, node.getHostAddress(), port));
+        });
     }
     
-    private String trySelect(int id, String message) {
+    private String trySelect(Game game, int id) {
+        Model model = game.model;
         try {
             model.setSelection(Optional.of(model.getPegById(id)));
             if (model.hasSelection() && isValidSelection(model.getSelection().get())) {
-                return message;
+                return MessageEncoder.delta(++game.seq, NONE, NONE, id, false);
             } else {
                 model.setSelection(Optional.empty());
-                return "error";
+                return MessageEncoder.delta(++game.seq, NONE, NONE, -1, true);
             }
         } catch (ArrayIndexOutOfBoundsException e) {
             e.printStackTrace();
-            return "error";
+            model.setSelection(Optional.empty());
+            return MessageEncoder.delta(++game.seq, NONE, NONE, -1, true);
         }
     }
 
@@ -134,29 +217,19 @@ public class Controller {
         return p.isEnabled() && !p.isDiscarded();
     }
 
-    private String tryJump(Peg firstSelection, Peg secondSelection) throws JSONException {
+    private String tryJump(Game game, Peg firstSelection, Peg secondSelection) {
+        Model model = game.model;
+        model.setSelection(Optional.empty());
         if (!secondSelection.isDiscarded()) {
-            model.setSelection(Optional.empty());
-            return jumpError(firstSelection);
+            return MessageEncoder.delta(++game.seq, NONE, NONE, -1, true);
         }
         Optional<Peg> jumped = model.findPegBetween(firstSelection, secondSelection);
         if (jumped.isPresent() && model.isValidJump(jumped.get(), secondSelection)) {
-            JSONObject jumpData = new JSONObject();
-            jumpData.put("source", "peg" + firstSelection.getId());
-            jumpData.put("jumped", "peg" + jumped.get().getId());
-            jumpData.put("destination", "peg" + secondSelection.getId());
             model.jump(firstSelection, jumped.get(), secondSelection);
-            model.setSelection(Optional.empty());
-            return String.valueOf(jumpData);
+            return MessageEncoder.delta(++game.seq, new int[]{firstSelection.getId(), jumped.get().getId()},
+                    new int[]{secondSelection.getId()}, -1, false);
         } else {
-            model.setSelection(Optional.empty());
-            return jumpError(firstSelection);
+            return MessageEncoder.delta(++game.seq, NONE, NONE, -1, true);
         }
     }
-
-    private String jumpError(Peg pegToUnselect) throws JSONException {
-        JSONObject errorData = new JSONObject();
-        errorData.put("error", "peg" + pegToUnselect.getId());
-        return String.valueOf(errorData);
-    }
-}
\ No newline at end of file
+}
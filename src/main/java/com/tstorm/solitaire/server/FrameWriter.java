@@ -0,0 +1,63 @@
+package com.tstorm.solitaire.server;
+
+import com.tstorm.solitaire.metrics.Metrics;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Writes whole frames to one peer, one at a time. Locked rather than synchronized, so a
+ * virtual thread blocked in the write does not pin its carrier. A heartbeat is skipped while
+ * the last one is still waiting to be written, so a peer that has stopped reading holds up
+ * at most one heartbeat thread.
+ */
+abstract class FrameWriter {
+    private final ReentrantLock lock = new ReentrantLock();
+    private final AtomicBoolean heartbeatPending = new AtomicBoolean();
+
+    /**
+     * False once the connection is closed, after which frames are dropped.
+     */
+    abstract boolean isOpen();
+
+    /**
+     * Writes all of {@code frame}. Only ever called by one thread at a time.
+     */
+    abstract void write(ByteBuffer frame) throws IOException;
+
+    /**
+     * Writes {@code frame} from its position to its limit, leaving the buffer itself
+     * untouched so it can be sent to several peers.
+     */
+    void send(ByteBuffer frame) {
+        if (!isOpen()) {
+            return; // lost, and whoever reads the connection is already dealing with it
+        }
+        frame = frame.duplicate();
+        Metrics.BYTES_SENT.add(frame.remaining());
+        lock.lock();
+        try {
+            write(frame);
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sends a heartbeat, unless the last one is still waiting to be written.
+     */
+    void heartbeat() {
+        if (!heartbeatPending.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            send(ByteBuffer.wrap(new byte[]{Protocol.HEARTBEAT}));
+        } finally {
+            heartbeatPending.set(false);
+        }
+    }
+}
@@ -1,134 +1,498 @@
 package com.tstorm.solitaire.server;
 
 import com.tstorm.solitaire.App;
+import com.tstorm.solitaire.endgame.SolutionCache;
+import com.tstorm.solitaire.metrics.Metrics;
 import com.tstorm.solitaire.moves.MasterMoveEvaluator;
 import com.tstorm.solitaire.moves.Move;
 import com.tstorm.solitaire.moves.MoveEvaluator;
+import com.tstorm.solitaire.moves.Search;
+import com.tstorm.solitaire.moves.SolvabilityOracle;
 import com.tstorm.solitaire.pieces.Board;
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
 
 import java.io.IOException;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Runs suggestion searches on the local pool and the slaves. Any number of callers may
+ * evaluate at once, each search under its own request id; at most
+ * {@code solitaire.master.concurrentSearches} of them run at a time and the rest wait their
+ * turn, which bounds the memory their visited sets take. Callers may pass a {@link Progress}
+ * to hear about each top level move as soon as it is decided, rather than only at the end.
+ */
 public class Master {
-    private static final int THREE_MINUTES = 3 * 60 * 1000;
+    public static final String CONCURRENT_SEARCHES_PROPERTY = "solitaire.master.concurrentSearches";
+    public static final int DEFAULT_CONCURRENT_SEARCHES = 4;
+    
+    private static final int LOCAL = 0;
+    
+    /**
+     * Hears about the top level moves of a search as each is proven to win or to lose. Called
+     * from the threads that finish the search's units, one call at a time, and never once
+     * {@link #evaluate(Board, Search, Progress)} has returned.
+     */
+    public interface Progress {
+        Progress NONE = (move, winning) -> { };
+
+        void proven(Move move, boolean winning);
+    }
+    
+    /**
+     * One running search: its scheduler and the slaves taking part in it.
+     */
+    private static class Evaluation {
+        final int request;
+        final Search search;
+        final WorkScheduler scheduler;
+        final Progress progress;
+        volatile List<Slave> participants;
+        private boolean finished = false;
+
+        Evaluation(int request, Search search, WorkScheduler scheduler, Progress progress, List<Slave> participants) {
+            this.request = request;
+            this.search = search;
+            this.scheduler = scheduler;
+            this.progress = progress;
+            this.participants = participants;
+        }
+
+        /**
+         * Passes on the moves decided since the last report.
+         */
+        synchronized void report() {
+            if (finished) {
+                return;
+            }
+            List<WorkScheduler.Decision> decided;
+            synchronized (scheduler) {
+                decided = scheduler.decided();
+            }
+            for (WorkScheduler.Decision d : decided) {
+                progress.proven(d.move, d.winning);
+            }
+        }
+
+        synchronized void finish() {
+            report();
+            finished = true;
+        }
+
+        int node(SocketChannel channel) {
+            List<Slave> participants = this.participants;
+            for (int i = 0; i < participants.size(); i++) {
+                if (participants.get(i).channel() == channel) {
+                    return i + 1;
+                }
+            }
+            return -1;
+        }
+    }
     
     private final List<Slave> cluster = new ArrayList<>();
-    private final List<MoveResult> results = new ArrayList<>();
-    private MasterMoveEvaluator moveEvaluator;
-    private volatile boolean listening = true;
+    private final SolverPool solverPool = new SolverPool();
+    private final SolutionCache solutionCache = loadSolutionCache();
+    private final WorkScheduler.Mode mode;
+    private final Map<Integer, Evaluation> evaluations = new ConcurrentHashMap<>();
+    private final Semaphore searches = new Semaphore(
+            Integer.getInteger(CONCURRENT_SEARCHES_PROPERTY, DEFAULT_CONCURRENT_SEARCHES), true);
+    private int request = 0;
+    private ResultReader.Listener results;
+    private final ExecutorService forwarder = Executors.newVirtualThreadPerTaskExecutor();
+    private final ExecutorService searchers = Executors.newVirtualThreadPerTaskExecutor();
+    private final ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "heartbeat");
+        thread.setDaemon(true);
+        return thread;
+    });
+    
+    public Master() {
+        this(WorkScheduler.defaultMode());
+    }
+    
+    public Master(WorkScheduler.Mode mode) {
+        this.mode = mode;
+        solverPool.registerMetrics();
+        MoveEvaluator.registerMetrics();
+    }
+    
+    private static SolutionCache loadSolutionCache() {
+        try {
+            SolutionCache cache = SolutionCache.load(App.SOLUTION_CACHE_FILE);
+            System.out.println(String.format("solution cache: %d winning moves", cache.size()));
+            return cache;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return SolutionCache.EMPTY;
+        }
+    }
     
+    /**
+     * Gets ready to read slave results. Each slave answers on the connection the master
+     * opened to it, read by a virtual thread of its own. Also starts the heartbeat, which
+     * drops a slave that has been silent for {@code solitaire.cluster.heartbeatTimeoutMillis}
+     * and hands its unfinished units to the nodes that remain.
+     */
     public Master startListening() {
-        new Thread(() -> {
-            try (ServerSocket serverSocket = new ServerSocket(App.PORT)) {
-                while (listening) {
-                    addMove(serverSocket.accept());
+        results = new ResultReader.Listener() {
+            @Override
+            public void onResult(SocketChannel channel, int request, int unit, SolvabilityOracle.Result result) {
+                Evaluation evaluation = evaluations.get(request);
+                int node = evaluation == null ? -1 : evaluation.node(channel);
+                if (node > 0) {
+                    complete(evaluation, node, unit, result);
                 }
-            } catch (IOException e) {
-                e.printStackTrace();
             }
-        }).start();
+
+            @Override
+            public void onPull(SocketChannel channel, int request, int count) {
+                Evaluation evaluation = evaluations.get(request);
+                int node = evaluation == null ? -1 : evaluation.node(channel);
+                if (node > 0) {
+                    synchronized (evaluation.scheduler) {
+                        evaluation.scheduler.request(node, count);
+                    }
+                    dispatch(evaluation);
+                }
+            }
+
+            @Override
+            public void onShare(SocketChannel channel, ByteBuffer frame) {
+                ResultSharing.apply(MoveEvaluator.getOracle(), frame);
+                // forwarded off the reader, which must keep draining its slave
+                forwarder.execute(() -> broadcast(frame, channel));
+            }
+
+            @Override
+            public void onHeartbeat(SocketChannel channel) {
+                Slave s = slave(channel);
+                if (s != null) {
+                    s.heard();
+                }
+            }
+
+            @Override
+            public void onDisconnect(SocketChannel channel) {
+                removeSlave(channel);
+            }
+        };
+        heartbeat.scheduleAtFixedRate(this::checkHeartbeats, 0, Protocol.heartbeatMillis(), TimeUnit.MILLISECONDS);
+        if (ResultSharing.isEnabled()) {
+            ResultSharing.start(MoveEvaluator.getOracle(), frame -> broadcast(frame, null));
+        }
         return this;
     }
-    private void addMove(Socket s) {
-        if (moveEvaluator != null) {
-            MoveResult moveResult = new MoveResult(s, moveEvaluator);
-            synchronized (results) {
-                results.add(moveResult);
+    
+    /**
+     * Sends {@code frame} to every slave but the one on {@code from}.
+     */
+    private void broadcast(ByteBuffer frame, SocketChannel from) {
+        List<Slave> slaves;
+        synchronized (cluster) {
+            slaves = new ArrayList<>(cluster);
+        }
+        for (Slave s : slaves) {
+            if (s.channel() != from) {
+                s.sendFrame(frame);
             }
-            moveResult.start();
         }
     }
     
+    private void checkHeartbeats() {
+        List<Slave> slaves;
+        synchronized (cluster) {
+            slaves = new ArrayList<>(cluster);
+        }
+        // checked before anything is sent, and everything sent off this thread, so a slave that
+        // has stopped reading cannot hold up the check of the others
+        for (Slave s : slaves) {
+            if (s.silentMillis() > Protocol.heartbeatTimeoutMillis()) {
+                System.err.println(String.format("No heartbeat from a slave for %d ms", s.silentMillis()));
+                forwarder.execute(() -> removeSlave(s.channel()));
+            } else {
+                forwarder.execute(s::heartbeat);
+            }
+        }
+    }
+    
+    private Slave slave(SocketChannel channel) {
+        synchronized (cluster) {
+            for (Slave s : cluster) {
+                if (s.channel() == channel) {
+                    return s;
+                }
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Lets go of the slave on {@code channel} and hands the units it was running to the
+     * remaining nodes.
+     */
+    private void removeSlave(SocketChannel channel) {
+        Slave lost = slave(channel);
+        if (lost == null) {
+            return; // already gone
+        }
+        List<Evaluation> running;
+        synchronized (cluster) {
+            if (!cluster.remove(lost)) {
+                return;
+            }
+            running = new ArrayList<>(evaluations.values());
+        }
+        lost.close();
+        Metrics.remove(lost.metricName());
+        System.err.println("Lost connection with a slave");
+        for (Evaluation evaluation : running) {
+            int node = evaluation.node(channel);
+            if (node > 0 && !evaluation.search.isCancelled()) {
+                synchronized (evaluation.scheduler) {
+                    Metrics.REDISPATCHED_UNITS.add(evaluation.scheduler.fail(node));
+                }
+                dispatch(evaluation);
+            }
+        }
+    }
+    
+    public SolverPool getSolverPool() {
+        return solverPool;
+    }
+    
+    /**
+     * Adds a slave to the cluster. The slave joins the running searches straight away.
+     */
     public void addSlave(Slave s) {
-        cluster.add(s);
+        Metrics.histogram(s.metricName(), s.roundTrip());
+        ResultReader.start(s.channel(), results);
+        synchronized (cluster) {
+            cluster.add(s);
+            for (Evaluation evaluation : evaluations.values()) {
+                if (!evaluation.search.isCancelled()) {
+                    List<Slave> participants = new ArrayList<>(evaluation.participants);
+                    participants.add(s);
+                    synchronized (evaluation.scheduler) {
+                        evaluation.scheduler.addNode();
+                    }
+                    evaluation.participants = participants;
+                    s.startRequest(evaluation.request, evaluation.search.remainingMillis());
+                }
+            }
+        }
     }
     
     public void shutdown() {
-        for (Slave s : cluster) {
-            s.shutdown(true);
+        cancel();
+        List<Slave> slaves;
+        synchronized (cluster) {
+            slaves = new ArrayList<>(cluster);
         }
+        for (Slave s : slaves) {
+            s.shutdown();
+        }
+    }
+    
+    /**
+     * Stops every running suggestion search.
+     */
+    public void cancel() {
+        for (Evaluation evaluation : evaluations.values()) {
+            cancel(evaluation);
+        }
+    }
+    
+    /**
+     * Stops the suggestion search run for {@code search}, if any. Its
+     * {@link #evaluate(Board, Search)} then returns the suggestions proven so far.
+     */
+    public void cancel(Search search) {
+        if (search == null) {
+            return;
+        }
+        search.cancel();
+        for (Evaluation evaluation : evaluations.values()) {
+            if (evaluation.search == search) {
+                cancel(evaluation);
+            }
+        }
+    }
+    
+    private void cancel(Evaluation evaluation) {
+        evaluation.search.cancel();
+        for (Slave s : evaluation.participants) {
+            s.cancel(evaluation.request);
+        }
+        synchronized (evaluation.scheduler) {
+            evaluation.scheduler.notifyAll();
+        }
+    }
+    
+    public List<Move> evaluate(Board b) {
+        return evaluate(b, new Search());
+    }
+    
+    public List<Move> evaluate(Board b, Search search) {
+        return evaluate(b, search, Progress.NONE);
+    }
+    
+    /**
+     * Runs {@link #evaluate(Board, Search, Progress)} on a virtual thread of its own and
+     * returns at once. The search only waits on its units, which run on the solver pool and
+     * the slaves, so the caller's thread is never held by it. {@code b} must not change
+     * while the search runs.
+     */
+    public CompletableFuture<List<Move>> evaluateAsync(Board b, Search search, Progress progress) {
+        return CompletableFuture.supplyAsync(() -> evaluate(b, search, progress), searchers);
     }
     
-    public String evaluate(Board b) {
+    /**
+     * The winning moves of {@code b}, searching until every move is decided or
+     * {@code search} is cancelled or runs out of time. Each move is passed to
+     * {@code progress} as soon as it is decided; moves still open at the end are not.
+     */
+    public List<Move> evaluate(Board b, Search search, Progress progress) {
+        List<Move> cached = solutionCache.winningMoves(b.pegs());
+        if (!cached.isEmpty()) {
+            for (Move m : cached) {
+                progress.proven(m, true);
+            }
+            return cached;
+        }
         try {
-            moveEvaluator = new MasterMoveEvaluator(b, Optional.empty());
-            for (Slave s : cluster) {
-                s.shutdown(false);
+            // wait for a turn, but give up with the search
+            while (!searches.tryAcquire(Math.max(1, Math.min(100, search.remainingMillis())), TimeUnit.MILLISECONDS)) {
+                if (search.isCancelled()) {
+                    return Collections.emptyList();
+                }
             }
-            JSONArray suggestions = moveEvaluator.evaluate(distributeWork(b));
-            final int remainingMoves = remainingMoveCount();
-            while (!hasAllResults(remainingMoves)) {
-                synchronized (moveEvaluator) {
-                    moveEvaluator.wait(THREE_MINUTES);
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+            return Collections.emptyList();
+        }
+        Evaluation evaluation = null;
+        try {
+            // slaves joining or leaving see either all of this search or none of it
+            synchronized (cluster) {
+                List<Slave> participants = new ArrayList<>(cluster);
+                WorkScheduler scheduler = new WorkScheduler(b.pegs(), b.getMoves(), mode, participants.size() + 1);
+                evaluation = new Evaluation(++request, search, scheduler, progress, participants);
+                Metrics.WORK_UNITS.add(scheduler.size());
+                evaluations.put(evaluation.request, evaluation);
+                for (Slave s : participants) {
+                    s.startRequest(evaluation.request, search.remainingMillis());
                 }
             }
-            // we should be finished writing to results at this point
-            for (MoveResult move : results) {
-                if (move.result()) {
-                    suggestions.put(moveEvaluator.buildSuggestion(move.move()));
+            WorkScheduler scheduler = evaluation.scheduler;
+            synchronized (scheduler) {
+                scheduler.request(LOCAL, solverPool.getParallelism());
+            }
+            dispatch(evaluation);
+            synchronized (scheduler) {
+                while (!scheduler.isFinished() && !search.isCancelled()) {
+                    scheduler.wait(Math.max(1, search.remainingMillis()));
                 }
             }
-            JSONObject object = new JSONObject();
-            object.put("suggestions", suggestions);
-            return object.toString();
-        } catch (JSONException | InterruptedException | IOException e) {
+            // stop the units still running for moves that are already decided
+            cancel(evaluation);
+            evaluation.finish();
+            List<Move> winning;
+            synchronized (scheduler) {
+                winning = scheduler.winningMoves();
+            }
+            return winning;
+        } catch (InterruptedException e) {
             e.printStackTrace();
+        } finally {
+            if (evaluation != null) {
+                evaluation.finish();
+                evaluations.remove(evaluation.request);
+            }
+            search.release();
+            searches.release();
         }
-        return "";
-    }
-    
-    private List<MoveEvaluator> distributeWork(Board board) {
-        List<MoveEvaluator> pendingEvaluations = new ArrayList<>();
-        List<Move> moves = board.getMoves();
-        for (int i = 0; i < moves.size(); i++) {
-            Move m = moves.get(i);
-            Board copy = new Board(board);
-            copy.jump(m.start(), m.jumped(), m.end());
-            int pos = i % (cluster.size() + 1); // plus me
-            if (pos == 0) {
-                // I'll do it
-                MoveEvaluator evaluation = new MasterMoveEvaluator(copy, Optional.of(moves.get(i)));
-                pendingEvaluations.add(evaluation);
-                evaluation.fork();
+        return Collections.emptyList();
+    }
+    
+    /**
+     * Sends every unit the scheduler can hand out right now to the node that asked for it.
+     */
+    private void dispatch(Evaluation evaluation) {
+        List<WorkScheduler.Assignment> assignments;
+        synchronized (evaluation.scheduler) {
+            assignments = evaluation.scheduler.assign();
+            // assigning settles units the oracle already knows, which may decide the last move
+            if (evaluation.scheduler.isFinished()) {
+                evaluation.scheduler.notifyAll();
+            }
+        }
+        evaluation.report();
+        List<Slave> participants = evaluation.participants;
+        List<List<WorkScheduler.Assignment>> work = new ArrayList<>();
+        for (int i = 0; i < participants.size(); i++) {
+            work.add(new ArrayList<>());
+        }
+        for (WorkScheduler.Assignment a : assignments) {
+            if (a.node == LOCAL) {
+                evaluateLocally(evaluation, a);
             } else {
-                // Delegate to a worker node
-                boolean hasMoreWork = moves.size() - i > cluster.size() + 1;
-                cluster.get(pos - 1).sendMove(m);
-                cluster.get(pos - 1).sendBoard(board, hasMoreWork);
+                work.get(a.node - 1).add(a);
+            }
+        }
+        for (int i = 0; i < participants.size(); i++) {
+            if (!work.get(i).isEmpty()) {
+                participants.get(i).sendWork(evaluation.request, work.get(i));
             }
         }
-        // TODO if moves < cluster size
-        return pendingEvaluations;
     }
     
-    private boolean hasAllResults(int remainingMoves) {
-        int i = 0;
-        synchronized (results) {
-            for (MoveResult result : results) {
-                if (!result.isWaitingForResult()) {
-                    i += 1;
-                }
+    private void evaluateLocally(Evaluation evaluation, WorkScheduler.Assignment assignment) {
+        Search search = evaluation.search;
+        solverPool.execute(() -> {
+            SolvabilityOracle.Result result;
+            if (assignment.retry) {
+                result = MoveEvaluator.solve(assignment.pegs, search);
+            } else {
+                MasterMoveEvaluator task = new MasterMoveEvaluator(assignment.pegs, Optional.empty(), search);
+                task.invoke();
+                result = task.getResult();
             }
-        }
-        return remainingMoves - i == 0 || cluster.size() == 0;
+            if (search.isCancelled()) {
+                return;
+            }
+            complete(evaluation, LOCAL, assignment.unit, result);
+            synchronized (evaluation.scheduler) {
+                evaluation.scheduler.request(LOCAL, 1);
+            }
+            dispatch(evaluation);
+        });
     }
     
-    private int remainingMoveCount() {
-        if (moveEvaluator != null) {
-            int totalMoves = moveEvaluator.getBoard().getMoves().size();
-            int totalClusterSize = cluster.size() + 1;
-            int remainingMoves = totalMoves / totalClusterSize;
-            remainingMoves += (totalMoves % totalClusterSize > 0) ? 1 : 0;
-            return remainingMoves;
-        } else {
-            throw new RuntimeException();
+    private void complete(Evaluation evaluation, int node, int unit, SolvabilityOracle.Result result) {
+        WorkScheduler scheduler = evaluation.scheduler;
+        long elapsed;
+        synchronized (scheduler) {
+            elapsed = scheduler.elapsedNanos(node, unit);
+            scheduler.complete(node, unit, result);
+            if (scheduler.isFinished()) {
+                scheduler.notifyAll();
+            }
+        }
+        if (node != LOCAL && elapsed >= 0) {
+            evaluation.participants.get(node - 1).roundTrip().record(elapsed / 1000);
         }
+        evaluation.report();
     }
 }
@@ -0,0 +1,90 @@
+package com.tstorm.solitaire.server;
+
+import com.tstorm.solitaire.BoardRenderer;
+import com.tstorm.solitaire.moves.Move;
+import com.tstorm.solitaire.pieces.BitBoard;
+import com.tstorm.solitaire.pieces.Board;
+
+/**
+ * Writes the messages the server sends a game's page, version {@link #VERSION}. Every message
+ * is a JSON object with the same keys for its type:
+ * <ul>
+ *     <li>{@code board}: {@code v}, {@code seq}, {@code type}, {@code selected}, {@code empty}
+ *     (ids of the empty holes), {@code table} (the board's markup). The whole state, sent on
+ *     connect and when the page asks to {@code resync}.</li>
+ *     <li>{@code delta}: {@code v}, {@code seq}, {@code type}, {@code off} (holes emptied),
+ *     {@code on} (holes filled), {@code selected}, {@code error}. One change to the state;
+ *     each delta's {@code seq} is one more than the last, so the page can tell when it has
+ *     missed one.</li>
+ *     <li>{@code suggestion}: {@code v}, {@code seq}, {@code type}, {@code move} (a {@code
+ *     [start, end]} pair), {@code winning}. One move of the state with that {@code seq}, sent
+ *     as soon as the search proves it wins or loses.</li>
+ *     <li>{@code complete}: {@code v}, {@code seq}, {@code type}. The search for the state
+ *     with that {@code seq} is over; moves it did not decide in time were not sent.</li>
+ * </ul>
+ * {@code selected} is the selected peg's id, or -1. Messages are written into a per-thread
+ * builder rather than through {@code org.json}, since their shape never changes.
+ */
+final class MessageEncoder {
+    static final int VERSION = 2;
+
+    private static final ThreadLocal<StringBuilder> BUILDERS = ThreadLocal.withInitial(() -> new StringBuilder(256));
+
+    private MessageEncoder() {
+    }
+
+    static String board(int seq, Board b, int selected) {
+        StringBuilder message = start(seq, "board")
+                .append(",\"selected\":").append(selected)
+                .append(",\"empty\":[");
+        long empty = BitBoard.HOLES & ~b.pegs();
+        boolean first = true;
+        for (int id = 0; id < Board.ROWS * Board.COLUMNS; id++) {
+            if (BitBoard.hasPeg(empty, id)) {
+                message.append(first ? "" : ",").append(id);
+                first = false;
+            }
+        }
+        // the rendering is a {"table": ...} object of its own, so take its member as is
+        String rendered = BoardRenderer.CURRENT.render(b);
+        return message.append("],").append(rendered, 1, rendered.length()).toString();
+    }
+
+    static String delta(int seq, int[] off, int[] on, int selected, boolean error) {
+        StringBuilder message = start(seq, "delta");
+        message.append(",\"off\":");
+        ids(message, off);
+        message.append(",\"on\":");
+        ids(message, on);
+        return message.append(",\"selected\":").append(selected)
+                .append(",\"error\":").append(error)
+                .append('}').toString();
+    }
+
+    static String suggestion(int seq, Move move, boolean winning) {
+        return start(seq, "suggestion")
+                .append(",\"move\":[").append(move.start()).append(',').append(move.end())
+                .append("],\"winning\":").append(winning)
+                .append('}').toString();
+    }
+
+    static String complete(int seq) {
+        return start(seq, "complete").append('}').toString();
+    }
+
+    private static StringBuilder start(int seq, String type) {
+        StringBuilder message = BUILDERS.get();
+        message.setLength(0);
+        return message.append("{\"v\":").append(VERSION)
+                .append(",\"seq\":").append(seq)
+                .append(",\"type\":\"").append(type).append('"');
+    }
+
+    private static void ids(StringBuilder message, int[] ids) {
+        message.append('[');
+        for (int i = 0; i < ids.length; i++) {
+            message.append(i == 0 ? "" : ",").append(ids[i]);
+        }
+        message.append(']');
+    }
+}
@@ -0,0 +1,88 @@
+package com.tstorm.solitaire.server;
+
+import com.tstorm.solitaire.moves.SolvabilityOracle;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Binary wire format between masters and slaves, over one long lived connection per pair. A
+ * slave serves any number of masters, and each master any number of concurrent requests,
+ * told apart by a request id the master picks. Both sides start by sending {@link #MAGIC}
+ * and {@link #VERSION}, and drop the connection if the other side's do not match. After
+ * that the master sends frames that each start with a command byte:
+ * <ul>
+ *     <li>{@code START} request (int), timeout (long): starts a request</li>
+ *     <li>{@code WORK} request (int), count (int), then count work items: unit (int),
+ *     board (long), retry (byte): 1 if an earlier attempt could not prove the unit</li>
+ *     <li>{@code CANCEL} request (int): ends a request</li>
+ *     <li>{@code SHARE} count (int), then count entries: canonical key (long), result (byte):
+ *     positions other nodes have proven</li>
+ *     <li>{@code SHUTDOWN}: ends every request of this master and closes the connection</li>
+ *     <li>{@code HEARTBEAT}: nothing, sent every {@code solitaire.cluster.heartbeatMillis}</li>
+ * </ul>
+ * A board is its {@link com.tstorm.solitaire.pieces.BitBoard} value and a unit is the
+ * master's {@link WorkScheduler} id for it.
+ * <p>
+ * The slave pulls work and answers on the same connection:
+ * <ul>
+ *     <li>{@code PULL} request (int), count (int): asks for that many more work items</li>
+ *     <li>{@code RESULT} request (int), unit (int), result (byte): the
+ *     {@link SolvabilityOracle.Result} ordinal of a work item</li>
+ *     <li>{@code SHARE}: positions this slave has proven, which the master keeps and passes
+ *     on to the other slaves</li>
+ *     <li>{@code HEARTBEAT}: as from the master</li>
+ * </ul>
+ * Either side drops a peer it has not heard a heartbeat from for
+ * {@code solitaire.cluster.heartbeatTimeoutMillis}, which a connection that is merely busy
+ * never reaches.
+ */
+final class Protocol {
+    static final int MAGIC = 0x50454753; // "PEGS"
+    static final byte VERSION = 7;
+
+    static final byte START = 0, SHUTDOWN = 1, CANCEL = 2, WORK = 3, RESULT = 4, PULL = 5, SHARE = 6, HEARTBEAT = 7;
+
+    public static final String HEARTBEAT_PROPERTY = "solitaire.cluster.heartbeatMillis";
+    public static final String HEARTBEAT_TIMEOUT_PROPERTY = "solitaire.cluster.heartbeatTimeoutMillis";
+    public static final int DEFAULT_HEARTBEAT_MILLIS = 1000;
+    public static final int DEFAULT_HEARTBEAT_TIMEOUT_MILLIS = 5000;
+
+    /**
+     * Bytes on the wire for one work item.
+     */
+    static final int WORK_ITEM_BYTES = Integer.BYTES + Long.BYTES + 1;
+    static final int RESULT_BYTES = 1 + Integer.BYTES + Integer.BYTES + 1;
+    static final int PULL_BYTES = 1 + Integer.BYTES + Integer.BYTES;
+    static final int SHARE_HEADER_BYTES = 1 + Integer.BYTES;
+    static final int SHARE_ENTRY_BYTES = Long.BYTES + 1;
+    static final int MAX_SHARE_ENTRIES = 256;
+
+    private Protocol() {
+    }
+
+    static int heartbeatMillis() {
+        return Integer.getInteger(HEARTBEAT_PROPERTY, DEFAULT_HEARTBEAT_MILLIS);
+    }
+
+    static int heartbeatTimeoutMillis() {
+        return Integer.getInteger(HEARTBEAT_TIMEOUT_PROPERTY, DEFAULT_HEARTBEAT_TIMEOUT_MILLIS);
+    }
+
+    static void writeHeader(DataOutput out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+    }
+
+    static void readHeader(DataInput in) throws IOException {
+        int magic = in.readInt();
+        if (magic != MAGIC) {
+            throw new IOException(String.format("Not a solitaire peer (magic %08x)", magic));
+        }
+        byte version = in.readByte();
+        if (version != VERSION) {
+            throw new IOException(String.format("Unsupported protocol version %d, expected %d", version, VERSION));
+        }
+    }
+}
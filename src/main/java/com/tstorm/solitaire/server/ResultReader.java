@@ -0,0 +1,145 @@
+package com.tstorm.solitaire.server;
+
+import com.tstorm.solitaire.metrics.Metrics;
+import com.tstorm.solitaire.moves.SolvabilityOracle.Result;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Reads one slave connection on its own virtual thread and hands each complete
+ * {@code RESULT}, {@code PULL}, {@code SHARE} and {@code HEARTBEAT} frame to a
+ * {@link Listener}. A blocked read parks only the virtual thread, so a master can hold many
+ * slaves, each with results streaming in, for the cost of a few carrier threads.
+ */
+class ResultReader implements Runnable {
+    interface Listener {
+        void onResult(SocketChannel channel, int request, int unit, Result result);
+
+        void onPull(SocketChannel channel, int request, int count);
+
+        /**
+         * {@code frame} is the whole {@code SHARE} frame, ready to be forwarded as is.
+         */
+        void onShare(SocketChannel channel, ByteBuffer frame);
+
+        void onHeartbeat(SocketChannel channel);
+
+        void onDisconnect(SocketChannel channel);
+    }
+
+    private static final int BUFFER_SIZE = 4096;
+    private static final Result[] RESULTS = Result.values();
+
+    private final SocketChannel channel;
+    private final Listener listener;
+
+    private ResultReader(SocketChannel channel, Listener listener) {
+        this.channel = channel;
+        this.listener = listener;
+    }
+
+    /**
+     * Starts reading {@code channel}, which must be in blocking mode.
+     */
+    static void start(SocketChannel channel, Listener listener) {
+        Thread.ofVirtual().name("results-" + channel.socket().getPort()).start(new ResultReader(channel, listener));
+    }
+
+    /**
+     * Reads until the connection ends or breaks the protocol. Either way, and also when a
+     * listener throws, the slave is let go of.
+     */
+    @Override
+    public void run() {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        try {
+            int read;
+            while ((read = channel.read(buffer)) >= 0) {
+                Metrics.BYTES_RECEIVED.add(read);
+                buffer.flip();
+                int frameBytes;
+                while ((frameBytes = frameBytes(buffer)) > 0 && buffer.remaining() >= frameBytes) {
+                    read(buffer, frameBytes);
+                }
+                buffer.compact();
+            }
+        } catch (ClosedChannelException e) {
+            // closed by the master, which has let go of this slave
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            disconnect();
+        }
+    }
+
+    private void read(ByteBuffer buffer, int frameBytes) throws IOException {
+        byte command = buffer.get();
+        if (command == Protocol.HEARTBEAT) {
+            listener.onHeartbeat(channel);
+            return;
+        }
+        if (command == Protocol.SHARE) {
+            ByteBuffer frame = ByteBuffer.allocate(frameBytes);
+            buffer.position(buffer.position() - 1);
+            for (int i = 0; i < frameBytes; i++) {
+                frame.put(buffer.get());
+            }
+            frame.flip();
+            listener.onShare(channel, frame);
+            return;
+        }
+        int request = buffer.getInt();
+        if (command == Protocol.RESULT) {
+            int unit = buffer.getInt();
+            byte result = buffer.get();
+            if (result < 0 || result >= RESULTS.length) {
+                throw new IOException("Unknown result from slave: " + result);
+            }
+            listener.onResult(channel, request, unit, RESULTS[result]);
+        } else {
+            listener.onPull(channel, request, buffer.getInt());
+        }
+    }
+
+    /**
+     * Size of the frame starting at the buffer's position, or 0 if not enough of it has
+     * arrived to tell.
+     */
+    private static int frameBytes(ByteBuffer buffer) throws IOException {
+        if (!buffer.hasRemaining()) {
+            return 0;
+        }
+        byte command = buffer.get(buffer.position());
+        switch (command) {
+            case Protocol.RESULT:
+                return Protocol.RESULT_BYTES;
+            case Protocol.PULL:
+                return Protocol.PULL_BYTES;
+            case Protocol.HEARTBEAT:
+                return 1;
+            case Protocol.SHARE:
+                if (buffer.remaining() < Protocol.SHARE_HEADER_BYTES) {
+                    return 0;
+                }
+                int count = buffer.getInt(buffer.position() + 1);
+                if (count < 0 || count > Protocol.MAX_SHARE_ENTRIES) {
+                    throw new IOException("Oversized share frame: " + count);
+                }
+                return Protocol.SHARE_HEADER_BYTES + (count * Protocol.SHARE_ENTRY_BYTES);
+            default:
+                throw new IOException("Unexpected command from slave: " + command);
+        }
+    }
+
+    private void disconnect() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        listener.onDisconnect(channel);
+    }
+}
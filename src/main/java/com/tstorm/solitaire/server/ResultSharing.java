@@ -0,0 +1,112 @@
+package com.tstorm.solitaire.server;
+
+import com.tstorm.solitaire.moves.SolvabilityOracle;
+import com.tstorm.solitaire.moves.SolvabilityOracle.Result;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shares proven positions across the cluster. The master's oracle is the cluster's table:
+ * slaves send it what they prove and it passes every batch on to the other slaves, so all
+ * nodes look positions up in their own copy and never wait on the network.
+ * <p>
+ * Only positions with at least {@code solitaire.sharing.minPegs} pegs are shared, since
+ * those head the subtrees worth not searching twice, and they are sent in
+ * {@code SHARE} frames of up to {@link Protocol#MAX_SHARE_ENTRIES} entries, at the latest
+ * {@link #FLUSH_MILLIS} after they were proven. {@code solitaire.sharing.enabled=false}
+ * turns sharing off.
+ */
+class ResultSharing implements SolvabilityOracle.Listener {
+    interface Sink {
+        void send(ByteBuffer frame);
+    }
+
+    public static final String ENABLED_PROPERTY = "solitaire.sharing.enabled";
+    public static final String MIN_PEGS_PROPERTY = "solitaire.sharing.minPegs";
+    public static final int DEFAULT_MIN_PEGS = 18;
+    static final long FLUSH_MILLIS = 10;
+
+    private final Sink sink;
+    private final int minPegs = Integer.getInteger(MIN_PEGS_PROPERTY, DEFAULT_MIN_PEGS);
+    private final long[] keys = new long[Protocol.MAX_SHARE_ENTRIES];
+    private final byte[] results = new byte[Protocol.MAX_SHARE_ENTRIES];
+    private int size = 0;
+
+    private ResultSharing(Sink sink) {
+        this.sink = sink;
+    }
+
+    static boolean isEnabled() {
+        return Boolean.parseBoolean(System.getProperty(ENABLED_PROPERTY, "true"));
+    }
+
+    /**
+     * Starts sending what {@code oracle} records to {@code sink}.
+     */
+    static ResultSharing start(SolvabilityOracle oracle, Sink sink) {
+        ResultSharing sharing = new ResultSharing(sink);
+        ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "sharing");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(sharing::flush, FLUSH_MILLIS, FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+        oracle.setListener(sharing);
+        return sharing;
+    }
+
+    @Override
+    public void recorded(long key, Result result) {
+        if (Long.bitCount(key) < minPegs) {
+            return;
+        }
+        synchronized (this) {
+            keys[size] = key;
+            results[size] = (byte) result.ordinal();
+            if (++size == keys.length) {
+                flush();
+            }
+        }
+    }
+
+    synchronized void flush() {
+        if (size == 0) {
+            return;
+        }
+        ByteBuffer frame = ByteBuffer.allocate(Protocol.SHARE_HEADER_BYTES + (size * Protocol.SHARE_ENTRY_BYTES));
+        frame.put(Protocol.SHARE).putInt(size);
+        for (int i = 0; i < size; i++) {
+            frame.putLong(keys[i]).put(results[i]);
+        }
+        frame.flip();
+        size = 0;
+        sink.send(frame);
+    }
+
+    /**
+     * Records the entries of a whole {@code SHARE} frame.
+     */
+    static void apply(SolvabilityOracle oracle, ByteBuffer frame) {
+        ByteBuffer entries = frame.duplicate();
+        entries.get();
+        int count = entries.getInt();
+        for (int i = 0; i < count; i++) {
+            oracle.recordRemote(entries.getLong(), Result.values()[entries.get()]);
+        }
+    }
+
+    /**
+     * Records the entries of a {@code SHARE} frame whose command byte was already read.
+     */
+    static void apply(SolvabilityOracle oracle, DataInput in) throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            oracle.recordRemote(in.readLong(), Result.values()[in.readByte()]);
+        }
+    }
+}
@@ -1,133 +1,222 @@
 package com.tstorm.solitaire.server;
 
 import com.tstorm.solitaire.App;
-import com.tstorm.solitaire.moves.Move;
-import com.tstorm.solitaire.moves.SlaveMoveEvaluator;
-import com.tstorm.solitaire.pieces.Board;
-import com.tstorm.solitaire.pieces.Peg;
+import com.tstorm.solitaire.metrics.Histogram;
+import com.tstorm.solitaire.metrics.Metrics;
+import com.tstorm.solitaire.moves.MoveEvaluator;
 
 import java.io.*;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
 import java.util.List;
-import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public class Slave {
-    private Socket socket;
-    private DataOutputStream outputStream;
-    private ObjectOutputStream objectOutputStream;
+    public static final String CONCURRENT_REQUESTS_PROPERTY = "solitaire.slave.concurrentRequests";
+    public static final int DEFAULT_CONCURRENT_REQUESTS = 4;
+    
+    private final SocketChannel channel;
+    private final String name;
+    private final Histogram roundTrip = new Histogram();
+    private final CountDownLatch closed = new CountDownLatch(1);
+    private final FrameWriter writer = new FrameWriter() {
+        @Override
+        boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        @Override
+        void write(ByteBuffer frame) throws IOException {
+            while (frame.hasRemaining()) {
+                channel.write(frame);
+            }
+        }
+    };
+    // START, CANCEL and SHUTDOWN, written in order off the caller's thread
+    private final ExecutorService outbox = Executors.newSingleThreadExecutor(Thread.ofVirtual().factory());
+    private volatile long lastHeard = System.currentTimeMillis();
     
     public Slave(InetAddress address) throws IOException {
-        this.socket = new Socket(address, App.PORT);
-        this.outputStream = new DataOutputStream(socket.getOutputStream());
-        this.objectOutputStream = new ObjectOutputStream(socket.getOutputStream());
+        this(address, App.PORT);
+    }
+    
+    public Slave(InetAddress address, int port) throws IOException {
+        this.channel = SocketChannel.open(new InetSocketAddress(address, port));
+        this.name = address.getHostAddress() + ":" + port;
+        Socket socket = channel.socket();
+        DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+        Protocol.writeHeader(out);
+        out.flush();
+        Protocol.readHeader(new DataInputStream(socket.getInputStream()));
+        // from here on the master's result reader reads this connection
     }
     
+    /**
+     * Usage: {@code Slave [port]}
+     * <p>
+     * Runs until killed, serving every master that connects, each on its own virtual thread.
+     * At most {@code solitaire.slave.concurrentRequests} requests, across all masters, pull
+     * work at a time.
+     */
     public static void main(String[] args) throws IOException {
-        ServerSocket serverSocket = new ServerSocket(App.PORT);
-        System.out.printf("waiting...");
-        Socket master = serverSocket.accept();
-        InetAddress masterAddress = master.getInetAddress();
-        System.out.println("connected!");
-        InputStream stream = master.getInputStream();
-        DataInputStream inputStream = new DataInputStream(stream);
-        ObjectInputStream objectInputStream = new ObjectInputStream(stream);
-        List<SlaveMoveEvaluator> pendingEvaluations = new ArrayList<>();
-        while (!inputStream.readBoolean()) {
-            boolean hasAllBoards = false;
-            while (!hasAllBoards) {
-                Move m = receiveMove(inputStream);
-                System.out.println(m.toString());
-                Board b = createBoard(objectInputStream);
-                b.jump(m.start(), m.jumped(), m.end());
-                SlaveMoveEvaluator evaluation = new SlaveMoveEvaluator(b, Optional.of(m));
-                pendingEvaluations.add(evaluation);
-                evaluation.fork();
-                if (!inputStream.readBoolean()) {
-                    hasAllBoards = true;
+        App.loadEndgameDatabase();
+        SolverPool solverPool = new SolverPool();
+        solverPool.registerMetrics();
+        MoveEvaluator.registerMetrics();
+        Metrics.registerMBean();
+        Set<SlaveConnection> connections = ConcurrentHashMap.newKeySet();
+        Semaphore requests = new Semaphore(
+                Integer.getInteger(CONCURRENT_REQUESTS_PROPERTY, DEFAULT_CONCURRENT_REQUESTS), true);
+        if (ResultSharing.isEnabled()) {
+            ResultSharing.start(MoveEvaluator.getOracle(), frame -> {
+                for (SlaveConnection c : connections) {
+                    c.share(frame);
                 }
+            });
+        }
+        ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeat.scheduleAtFixedRate(() -> {
+            // each on a virtual thread, so a master that has stopped reading holds up no other
+            for (SlaveConnection c : connections) {
+                Thread.ofVirtual().start(c::heartbeat);
             }
-            for (int i = 0; i < pendingEvaluations.size(); i++) {
-                boolean result = pendingEvaluations.get(i).join();
-                try (Socket response = new Socket(masterAddress, App.PORT)) {
-                    DataOutputStream out = new DataOutputStream(response.getOutputStream());
-                    Optional<Move> m = pendingEvaluations.get(i).getEvaluationMove();
-                    if (m.isPresent()) {
-                        out.writeInt(m.get().start());
-                        out.writeInt(m.get().jumped());
-                        out.writeInt(m.get().end());
-                        out.writeBoolean(result);
-                    } else {
-                        out.write(-1);
-                    }
+        }, 0, Protocol.heartbeatMillis(), TimeUnit.MILLISECONDS);
+        ServerSocket serverSocket = new ServerSocket(args.length > 0 ? Integer.parseInt(args[0]) : App.PORT);
+        System.out.println("waiting for masters on port " + serverSocket.getLocalPort());
+        while (true) {
+            Socket master = serverSocket.accept();
+            SlaveConnection connection = new SlaveConnection(master, solverPool, requests);
+            connections.add(connection);
+            Thread.ofVirtual().name("master-" + master.getRemoteSocketAddress()).start(() -> {
+                try {
+                    connection.run();
+                } finally {
+                    connections.remove(connection);
                 }
-            }
+            });
         }
-        objectInputStream.close();
-        inputStream.close();
-        master.close();
     }
     
-    public void shutdown(boolean shutdown) {
-        try {
-            outputStream.writeBoolean(shutdown);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+    SocketChannel channel() {
+        return channel;
+    }
+    
+    /**
+     * Microseconds from handing this slave a unit to hearing its result.
+     */
+    Histogram roundTrip() {
+        return roundTrip;
+    }
+    
+    String metricName() {
+        return "slave." + name + ".roundTripMicros";
+    }
+    
+    void heard() {
+        lastHeard = System.currentTimeMillis();
+    }
+    
+    long silentMillis() {
+        return System.currentTimeMillis() - lastHeard;
+    }
+    
+    void heartbeat() {
+        writer.heartbeat();
     }
     
-    public void sendMove(Move move) {
+    /**
+     * Waits until the master has let go of this slave, because it left or failed.
+     */
+    public void awaitClose() throws InterruptedException {
+        closed.await();
+    }
+    
+    void close() {
         try {
-            outputStream.writeInt(move.start());
-            outputStream.writeInt(move.jumped());
-            outputStream.writeInt(move.end());
+            channel.close();
         } catch (IOException e) {
             e.printStackTrace();
         }
+        outbox.shutdown();
+        closed.countDown();
+    }
+    
+    /**
+     * Queues the start of {@code request}, which this slave then pulls work for. Returns
+     * at once, so a slave that has stopped reading holds up neither the caller nor any lock
+     * it holds.
+     */
+    public void startRequest(int request, long timeoutMillis) {
+        ByteBuffer frame = ByteBuffer.allocate(1 + Integer.BYTES + Long.BYTES);
+        frame.put(Protocol.START).putInt(request).putLong(timeoutMillis);
+        queue(frame);
+    }
+    
+    /**
+     * Queues the end of {@code request}, behind its start.
+     */
+    public void cancel(int request) {
+        ByteBuffer frame = ByteBuffer.allocate(1 + Integer.BYTES);
+        frame.put(Protocol.CANCEL).putInt(request);
+        queue(frame);
     }
     
-    public static Move receiveMove(DataInputStream inputStream) {
-        int start, jumped, end;
+    /**
+     * Ends this master's connection; the slave keeps serving other masters.
+     */
+    public void shutdown() {
+        ByteBuffer frame = ByteBuffer.allocate(1);
+        frame.put(Protocol.SHUTDOWN);
+        queue(frame);
+    }
+    
+    private void queue(ByteBuffer frame) {
+        frame.flip();
         try {
-            start = inputStream.readInt();
-            jumped = inputStream.readInt();
-            end = inputStream.readInt();
-        } catch (IOException e) {
-            e.printStackTrace();
-            start = jumped = end = 0;
-        }
-        return new Move(start, jumped, end);
-    }
-    
-    private static Board createBoard(ObjectInputStream inputStream) throws IOException {
-        Peg[][] pegs = new Peg[Board.ROWS][Board.COLUMNS];
-        int i = 0, j = 0;
-        while (i < Board.ROWS) {
-            try {
-                pegs[i][j++] = (Peg) inputStream.readObject();
-                if (j == Board.COLUMNS) {
-                    j = 0;
-                    i += 1;
-                }
-            } catch (ClassNotFoundException e) {
-                e.printStackTrace();
-            }
+            outbox.execute(() -> sendFrame(frame));
+        } catch (RejectedExecutionException e) {
+            // closed, and the master is already dealing with it
         }
-        return new Board(pegs);
     }
     
-    public void sendBoard(Board board, boolean isMoreWork) {
-        try {
-            for (Peg[] row : board.array()) {
-                for (Peg p : row) {
-                    objectOutputStream.writeObject(p);
-                }
-            }
-            outputStream.writeBoolean(isMoreWork);
-        } catch (IOException e) {
-            e.printStackTrace();
+    /**
+     * Sends one frame with the units of {@code request} assigned to this slave.
+     */
+    void sendWork(int request, List<WorkScheduler.Assignment> assignments) {
+        ByteBuffer frame = ByteBuffer.allocate(1 + Integer.BYTES + Integer.BYTES + (assignments.size() * Protocol.WORK_ITEM_BYTES));
+        frame.put(Protocol.WORK).putInt(request).putInt(assignments.size());
+        for (WorkScheduler.Assignment a : assignments) {
+            frame.putInt(a.unit).putLong(a.pegs).put((byte) (a.retry ? 1 : 0));
         }
+        send(frame);
+    }
+    
+    private void send(ByteBuffer frame) {
+        frame.flip();
+        sendFrame(frame);
+    }
+    
+    /**
+     * Writes a complete frame, leaving {@code frame} itself untouched so it can be sent to
+     * several slaves.
+     */
+    void sendFrame(ByteBuffer frame) {
+        writer.send(frame);
     }
-}
\ No newline at end of file
+}
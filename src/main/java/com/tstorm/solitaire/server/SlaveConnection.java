@@ -0,0 +1,244 @@
+package com.tstorm.solitaire.server;
+
+import com.tstorm.solitaire.metrics.Metrics;
+import com.tstorm.solitaire.moves.MoveEvaluator;
+import com.tstorm.solitaire.moves.Search;
+import com.tstorm.solitaire.moves.SlaveMoveEvaluator;
+import com.tstorm.solitaire.moves.SolvabilityOracle;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One master's connection to a slave. Each request the master starts gets its own
+ * {@link Search}, and with it its own deadline and visited set, so requests never see each
+ * other's positions; all of them share the slave's {@link SolverPool}. Since a request only
+ * pulls as many units as it has room for, no master can flood the pool. A request only pulls
+ * once it holds one of the slave's request slots, which bounds the memory the requests of
+ * all masters take; until then the master runs it on its other nodes. A master that has gone
+ * silent for longer than the heartbeat timeout is treated as gone.
+ */
+class SlaveConnection implements Runnable {
+    private final Socket socket;
+    private final SolverPool solverPool;
+    private final int prefetch;
+    private final Semaphore slots;
+    private final Map<Integer, Search> requests = new ConcurrentHashMap<>();
+    // the requests holding a slot
+    private final Set<Search> admitted = ConcurrentHashMap.newKeySet();
+    private volatile DataOutputStream out;
+    private final FrameWriter writer = new FrameWriter() {
+        @Override
+        boolean isOpen() {
+            return out != null && !socket.isClosed();
+        }
+
+        @Override
+        void write(ByteBuffer frame) throws IOException {
+            DataOutputStream out = SlaveConnection.this.out;
+            out.write(frame.array(), frame.arrayOffset() + frame.position(), frame.remaining());
+            out.flush();
+        }
+    };
+
+    SlaveConnection(Socket socket, SolverPool solverPool, Semaphore slots) {
+        this.socket = socket;
+        this.solverPool = solverPool;
+        this.slots = slots;
+        // keep every worker busy plus one unit in flight each, so no worker waits on the network
+        this.prefetch = solverPool.getParallelism() * 2;
+    }
+
+    @Override
+    public void run() {
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(counted(socket.getInputStream())));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            Protocol.readHeader(in);
+            Protocol.writeHeader(out);
+            out.flush();
+            // from here on heartbeats and shares may be written too
+            this.out = out;
+            socket.setSoTimeout(Protocol.heartbeatTimeoutMillis());
+            System.out.println("master connected: " + socket.getRemoteSocketAddress());
+            byte command;
+            while ((command = in.readByte()) != Protocol.SHUTDOWN) {
+                read(command, in);
+            }
+        } catch (EOFException e) {
+            // the master went away without saying goodbye
+        } catch (SocketTimeoutException e) {
+            System.err.println("no heartbeat from master " + socket.getRemoteSocketAddress());
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            for (Search search : requests.values()) {
+                end(search);
+            }
+            requests.clear();
+            try {
+                socket.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            System.out.println("master disconnected: " + socket.getRemoteSocketAddress());
+        }
+    }
+
+    private static InputStream counted(InputStream in) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int read = super.read(b, off, len);
+                if (read > 0) {
+                    Metrics.BYTES_RECEIVED.add(read);
+                }
+                return read;
+            }
+        };
+    }
+
+    private void read(byte command, DataInputStream in) throws IOException {
+        switch (command) {
+            case Protocol.START: {
+                int request = in.readInt();
+                Search search = new Search(in.readLong());
+                Search previous = requests.put(request, search);
+                if (previous != null) {
+                    end(previous);
+                }
+                admit(request, search);
+                break;
+            }
+            case Protocol.WORK: {
+                int request = in.readInt();
+                int count = in.readInt();
+                Search search = requests.get(request);
+                for (int i = 0; i < count; i++) {
+                    int unit = in.readInt();
+                    long pegs = in.readLong();
+                    boolean retry = in.readByte() != 0;
+                    if (search != null) {
+                        evaluate(request, unit, pegs, retry, search);
+                    }
+                }
+                break;
+            }
+            case Protocol.CANCEL: {
+                Search search = requests.remove(in.readInt());
+                if (search != null) {
+                    end(search);
+                }
+                break;
+            }
+            case Protocol.SHARE:
+                ResultSharing.apply(MoveEvaluator.getOracle(), in);
+                break;
+            case Protocol.HEARTBEAT:
+                break;
+            default:
+                throw new IOException("Unknown command " + command);
+        }
+    }
+
+    /**
+     * Pulls work for {@code request} once it holds a slot. It waits for one on a virtual
+     * thread of its own, so the connection keeps being read meanwhile, and gives up with the
+     * search.
+     */
+    private void admit(int request, Search search) {
+        Thread.ofVirtual().start(() -> {
+            try {
+                while (!slots.tryAcquire(Math.max(1, Math.min(100, search.remainingMillis())), TimeUnit.MILLISECONDS)) {
+                    if (search.isCancelled()) {
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+                return;
+            }
+            admitted.add(search);
+            // checked after joining, so either this or end() gives the slot back
+            if (search.isCancelled()) {
+                if (admitted.remove(search)) {
+                    slots.release();
+                }
+                return;
+            }
+            sendPull(request, prefetch);
+        });
+    }
+
+    private void end(Search search) {
+        search.cancel();
+        search.release();
+        if (admitted.remove(search)) {
+            slots.release();
+        }
+    }
+
+    /**
+     * Evaluates one unit on the pool. A retry is solved without the request's visited set,
+     * where the first attempt has already claimed the unit's positions.
+     */
+    private void evaluate(int request, int unit, long pegs, boolean retry, Search search) {
+        solverPool.execute(() -> {
+            SolvabilityOracle.Result result;
+            if (retry) {
+                result = MoveEvaluator.solve(pegs, search);
+            } else {
+                SlaveMoveEvaluator evaluation = new SlaveMoveEvaluator(pegs, Optional.empty(), search);
+                evaluation.invoke();
+                result = evaluation.getResult();
+            }
+            if (search.isCancelled()) {
+                // the master has stopped waiting for this request
+                return;
+            }
+            ByteBuffer frames = ByteBuffer.allocate(Protocol.RESULT_BYTES + Protocol.PULL_BYTES);
+            frames.put(Protocol.RESULT).putInt(request).putInt(unit).put((byte) result.ordinal());
+            // and pull a replacement
+            frames.put(Protocol.PULL).putInt(request).putInt(1);
+            frames.flip();
+            send(frames);
+        });
+    }
+
+    private void sendPull(int request, int count) {
+        ByteBuffer frame = ByteBuffer.allocate(Protocol.PULL_BYTES);
+        frame.put(Protocol.PULL).putInt(request).putInt(count);
+        frame.flip();
+        send(frame);
+    }
+
+    void heartbeat() {
+        writer.heartbeat();
+    }
+
+    /**
+     * Passes a {@code SHARE} frame of this slave's on to the master.
+     */
+    void share(ByteBuffer frame) {
+        send(frame);
+    }
+
+    private void send(ByteBuffer frame) {
+        writer.send(frame);
+    }
+}
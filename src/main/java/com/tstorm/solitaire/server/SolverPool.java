@@ -0,0 +1,57 @@
+package com.tstorm.solitaire.server;
+
+import com.tstorm.solitaire.metrics.Metrics;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The fork/join pool that runs suggestion searches, kept apart from the JVM-wide common pool
+ * so it can be sized and isolated per host. Configured with system properties:
+ * <ul>
+ *     <li>{@code solitaire.solver.parallelism} - worker count, defaults to the number of cores</li>
+ *     <li>{@code solitaire.solver.threadName} - worker name prefix, defaults to {@code solver}</li>
+ *     <li>{@code solitaire.solver.asyncMode} - FIFO scheduling of forked tasks, defaults to false</li>
+ * </ul>
+ */
+public class SolverPool extends ForkJoinPool {
+    public static final String PARALLELISM_PROPERTY = "solitaire.solver.parallelism";
+    public static final String THREAD_NAME_PROPERTY = "solitaire.solver.threadName";
+    public static final String ASYNC_MODE_PROPERTY = "solitaire.solver.asyncMode";
+
+    public SolverPool() {
+        this(Integer.getInteger(PARALLELISM_PROPERTY, Runtime.getRuntime().availableProcessors()),
+                System.getProperty(THREAD_NAME_PROPERTY, "solver"),
+                Boolean.getBoolean(ASYNC_MODE_PROPERTY));
+    }
+
+    public SolverPool(int parallelism, String threadName, boolean asyncMode) {
+        super(parallelism, namedThreads(threadName), null, asyncMode);
+    }
+
+    private static ForkJoinWorkerThreadFactory namedThreads(String threadName) {
+        AtomicInteger count = new AtomicInteger();
+        return pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName(threadName + "-" + count.getAndIncrement());
+            return thread;
+        };
+    }
+
+    /**
+     * Tasks waiting in worker queues plus submissions not yet picked up by a worker.
+     */
+    public long getQueueDepth() {
+        return getQueuedTaskCount() + getQueuedSubmissionCount();
+    }
+
+    /**
+     * Serves this pool's steals, queue depth and busy workers as {@code solver.*} gauges.
+     */
+    public void registerMetrics() {
+        Metrics.gauge("solver.steals", this::getStealCount);
+        Metrics.gauge("solver.queueDepth", this::getQueueDepth);
+        Metrics.gauge("solver.activeThreads", this::getActiveThreadCount);
+    }
+}
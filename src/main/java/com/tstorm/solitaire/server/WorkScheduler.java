@@ -0,0 +1,362 @@
+package com.tstorm.solitaire.server;
+
+import com.tstorm.solitaire.moves.Move;
+import com.tstorm.solitaire.moves.MoveEvaluator;
+import com.tstorm.solitaire.moves.SolvabilityOracle.Result;
+import com.tstorm.solitaire.pieces.BitBoard;
+import com.tstorm.solitaire.pieces.MoveTable;
+import com.tstorm.solitaire.pieces.Symmetry;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Splits one suggestion search into work units and decides which node evaluates each. Node 0
+ * is the master's own pool and node {@code k} is the k-th slave of the request. A unit is a
+ * position a fixed number of jumps below one of the top level moves; a top level move wins
+ * as soon as one of its units wins and loses once all of them have lost. Top level moves that
+ * lead to symmetric positions are one group, split and decided once for all of them.
+ * <p>
+ * Nodes pull work: each one asks for units with {@link #request(int, int)} as it runs dry and
+ * {@link #assign()} hands them out. With {@code WORK_STEALING} every node pulls from one
+ * shared queue, and once it is empty an idle node takes a second copy of the oldest unit
+ * still running elsewhere, so a slow node cannot hold up the end of the search. With
+ * {@code ROUND_ROBIN} each top level move is one unit dealt to the nodes in turn, which is
+ * how the master split work before. Selected with {@code solitaire.scheduler.mode}, and the
+ * unit depth with {@code solitaire.scheduler.unitDepth}.
+ * <p>
+ * Nodes may join a search with {@link #addNode()} and leave it with {@link #fail(int)}, which
+ * queues the units the lost node was running again for the nodes that remain.
+ * <p>
+ * A unit that comes back unproven is queued again as a retry, which the node runs without the
+ * search's visited set: the positions the first attempt claimed there would otherwise turn
+ * every retry away just as quickly. After {@code MAX_ATTEMPTS} the unit is given up, and its
+ * move is left undecided rather than holding the search open until its deadline.
+ * <p>
+ * Not thread safe on its own; the master calls it while holding its monitor.
+ */
+public class WorkScheduler {
+    public enum Mode {
+        ROUND_ROBIN,
+        WORK_STEALING
+    }
+
+    public static final String MODE_PROPERTY = "solitaire.scheduler.mode";
+    public static final String UNIT_DEPTH_PROPERTY = "solitaire.scheduler.unitDepth";
+    public static final int DEFAULT_UNIT_DEPTH = 3;
+
+    private static final int PENDING = 0, RUNNING = 1, DONE = 2;
+    private static final int MAX_COPIES = 2;
+    private static final int MAX_ATTEMPTS = 3;
+
+    /**
+     * A unit handed to a node. A retry is a unit some earlier attempt could not prove.
+     */
+    static class Assignment {
+        final int node;
+        final int unit;
+        final long pegs;
+        final boolean retry;
+
+        Assignment(int node, int unit, long pegs, boolean retry) {
+            this.node = node;
+            this.unit = unit;
+            this.pegs = pegs;
+            this.retry = retry;
+        }
+    }
+
+    /**
+     * A top level move that is decided: won, or lost with every unit of it.
+     */
+    static class Decision {
+        final Move move;
+        final boolean winning;
+
+        Decision(Move move, boolean winning) {
+            this.move = move;
+            this.winning = winning;
+        }
+    }
+
+    private final Mode mode;
+    private final List<Move> moves;
+    private final boolean[] won;
+    private final int[] open;
+    // the first move of each move's symmetry group, which holds the group's units and verdict
+    private final int[] leaders;
+    private final boolean[] reported;
+    // moves with a unit that was given up, which can no longer lose
+    private final boolean[] abandoned;
+
+    private long[] boards = new long[64];
+    private int[] parents = new int[64];
+    private int[] states = new int[64];
+    private int[] copies = new int[64];
+    private int[] owners = new int[64];
+    private int[] attempts = new int[64];
+    private int units = 0;
+
+    private final List<ArrayDeque<Integer>> queues = new ArrayList<>();
+    private int[] hunger;
+    private boolean[] failed;
+    // the units each node is running, with when each was handed to it
+    private final List<Map<Integer, Long>> held = new ArrayList<>();
+
+    static Mode defaultMode() {
+        return Mode.valueOf(System.getProperty(MODE_PROPERTY, Mode.WORK_STEALING.name()));
+    }
+
+    WorkScheduler(long pegs, List<Move> moves, Mode mode, int nodes) {
+        this.mode = mode;
+        this.moves = moves;
+        this.won = new boolean[moves.size()];
+        this.open = new int[moves.size()];
+        this.leaders = new int[moves.size()];
+        this.reported = new boolean[moves.size()];
+        this.abandoned = new boolean[moves.size()];
+        this.hunger = new int[nodes];
+        this.failed = new boolean[nodes];
+        for (int i = 0; i < nodes; i++) {
+            held.add(new HashMap<>());
+        }
+        for (int i = 0; i < (mode == Mode.WORK_STEALING ? 1 : nodes); i++) {
+            queues.add(new ArrayDeque<>());
+        }
+        int depth = mode == Mode.WORK_STEALING ? Integer.getInteger(UNIT_DEPTH_PROPERTY, DEFAULT_UNIT_DEPTH) : 1;
+        int[] buffer = new int[MoveTable.CURRENT.size()];
+        Map<Long, Integer> groups = new HashMap<>();
+        for (int parent = 0; parent < moves.size(); parent++) {
+            long child = BitBoard.jump(pegs, moves.get(parent));
+            Integer leader = groups.putIfAbsent(Symmetry.canonical(child), parent);
+            leaders[parent] = leader == null ? parent : leader;
+            if (leader == null) {
+                Set<Long> seen = new HashSet<>();
+                split(parent, child, depth - 1, seen, buffer);
+            }
+        }
+    }
+
+    private void split(int parent, long pegs, int depth, Set<Long> seen, int[] buffer) {
+        if (won[parent] || !seen.add(Symmetry.canonical(pegs)) || MoveEvaluator.getPruning().isHopeless(pegs)) {
+            return;
+        }
+        int count = depth == 0 ? 0 : MoveTable.CURRENT.generate(pegs, buffer);
+        if (depth == 0 || count == 0) {
+            if (BitBoard.pegCount(pegs) == 1) {
+                won[parent] = true;
+            } else if (depth == 0) {
+                addUnit(parent, pegs);
+            }
+            return;
+        }
+        int[] children = Arrays.copyOf(buffer, count);
+        for (int move : children) {
+            split(parent, MoveTable.jump(pegs, move), depth - 1, seen, buffer);
+        }
+    }
+
+    private void addUnit(int parent, long pegs) {
+        if (units == boards.length) {
+            boards = Arrays.copyOf(boards, units * 2);
+            parents = Arrays.copyOf(parents, units * 2);
+            states = Arrays.copyOf(states, units * 2);
+            copies = Arrays.copyOf(copies, units * 2);
+            owners = Arrays.copyOf(owners, units * 2);
+            attempts = Arrays.copyOf(attempts, units * 2);
+        }
+        boards[units] = pegs;
+        parents[units] = parent;
+        // round robin deals whole top level moves, which are the units at depth one
+        queues.get(queueOf(parent % queues.size())).add(units);
+        open[parent]++;
+        units++;
+    }
+
+    int size() {
+        return units;
+    }
+
+    /**
+     * Adds a node to the running search and returns its number. Round robin has already dealt
+     * its units, so there a new node only helps with what failed nodes leave behind.
+     */
+    int addNode() {
+        int node = hunger.length;
+        hunger = Arrays.copyOf(hunger, node + 1);
+        failed = Arrays.copyOf(failed, node + 1);
+        held.add(new HashMap<>());
+        return node;
+    }
+
+    /**
+     * Records that {@code node} can take {@code count} more units.
+     */
+    void request(int node, int count) {
+        if (!failed[node]) {
+            hunger[node] += count;
+        }
+    }
+
+    /**
+     * Takes {@code node} out of the search and queues every unit it was running again.
+     * Returns how many units that was.
+     */
+    int fail(int node) {
+        failed[node] = true;
+        hunger[node] = 0;
+        if (mode == Mode.ROUND_ROBIN && node < queues.size() && node != queueOf(node)) {
+            queues.get(queueOf(node)).addAll(queues.get(node));
+            queues.get(node).clear();
+        }
+        List<Integer> running = new ArrayList<>(held.get(node).keySet());
+        for (int unit : running) {
+            complete(node, unit, Result.UNKNOWN);
+        }
+        return running.size();
+    }
+
+    /**
+     * The queue whose units {@code node} takes: the one shared queue when stealing work, the
+     * node's own under round robin, or the master's if the node has none or has failed.
+     */
+    private int queueOf(int node) {
+        if (mode == Mode.WORK_STEALING || node >= queues.size() || failed[node]) {
+            return 0;
+        }
+        return node;
+    }
+
+    /**
+     * Hands out as many units as the hungry nodes asked for and are available.
+     */
+    List<Assignment> assign() {
+        List<Assignment> assignments = new ArrayList<>();
+        for (int node = 0; node < hunger.length; node++) {
+            while (hunger[node] > 0) {
+                int unit = next(node);
+                if (unit < 0) {
+                    break;
+                }
+                // another node may have proven it already, as part of some other unit
+                Result known = MoveEvaluator.getOracle().lookup(boards[unit]);
+                if (known != Result.UNKNOWN && states[unit] == PENDING) {
+                    complete(-1, unit, known);
+                    continue;
+                }
+                hunger[node]--;
+                states[unit] = RUNNING;
+                copies[unit]++;
+                owners[unit] = node;
+                held.get(node).put(unit, System.nanoTime());
+                assignments.add(new Assignment(node, unit, boards[unit], attempts[unit] > 0));
+            }
+        }
+        return assignments;
+    }
+
+    private int next(int node) {
+        if (mode == Mode.ROUND_ROBIN && queueOf(node) != node) {
+            return -1; // joined after the deal
+        }
+        ArrayDeque<Integer> queue = queues.get(queueOf(node));
+        while (!queue.isEmpty()) {
+            int unit = queue.poll();
+            if (states[unit] == PENDING && !won[parents[unit]]) {
+                return unit;
+            }
+        }
+        if (mode == Mode.WORK_STEALING) {
+            for (int unit = 0; unit < units; unit++) {
+                if (states[unit] == RUNNING && owners[unit] != node && copies[unit] < MAX_COPIES && !won[parents[unit]]) {
+                    return unit;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Nanoseconds since {@code unit} was handed to {@code node}, or -1 if it is not running
+     * there.
+     */
+    long elapsedNanos(int node, int unit) {
+        Long assigned = node < 0 || node >= held.size() ? null : held.get(node).get(unit);
+        return assigned == null ? -1 : System.nanoTime() - assigned;
+    }
+
+    /**
+     * Records {@code node}'s verdict on {@code unit}. An {@code UNKNOWN} unit, one whose node
+     * could not prove it either way, is queued again as a retry, or given up once it has used
+     * up its attempts.
+     */
+    void complete(int node, int unit, Result result) {
+        if (unit < 0 || unit >= units || (node >= 0 && held.get(node).remove(unit) == null)) {
+            return; // not running there, e.g. it was taken away from a failed node
+        }
+        if (states[unit] == DONE) {
+            return; // a second copy finished
+        }
+        int parent = parents[unit];
+        if (result == Result.UNKNOWN) {
+            attempts[unit]++;
+            if (--copies[unit] > 0) {
+                return; // the other copy may still prove it
+            }
+            if (attempts[unit] < MAX_ATTEMPTS) {
+                states[unit] = PENDING;
+                queues.get(queueOf(owners[unit])).add(unit);
+                return;
+            }
+            abandoned[parent] = true;
+        }
+        states[unit] = DONE;
+        open[parent]--;
+        if (result == Result.WIN) {
+            won[parent] = true;
+        }
+    }
+
+    boolean isFinished() {
+        for (int parent = 0; parent < moves.size(); parent++) {
+            if (!won[leaders[parent]] && open[leaders[parent]] > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The top level moves decided since the last call, each returned once. A move with a
+     * given up unit is only ever decided by winning.
+     */
+    List<Decision> decided() {
+        List<Decision> decided = new ArrayList<>();
+        for (int parent = 0; parent < moves.size(); parent++) {
+            int leader = leaders[parent];
+            if (!reported[parent] && (won[leader] || open[leader] == 0)) {
+                reported[parent] = true;
+                if (won[leader] || !abandoned[leader]) {
+                    decided.add(new Decision(moves.get(parent), won[leader]));
+                }
+            }
+        }
+        return decided;
+    }
+
+    List<Move> winningMoves() {
+        List<Move> winning = new ArrayList<>();
+        for (int parent = 0; parent < moves.size(); parent++) {
+            if (won[leaders[parent]]) {
+                winning.add(moves.get(parent));
+            }
+        }
+        return winning;
+    }
+}
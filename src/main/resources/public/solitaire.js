@@ -1,39 +1,94 @@
+var VERSION = 2;
 var webSocket = new WebSocket("ws://" + location.hostname + ":" + location.port + "/solitaire/");
 
-// construct the board on connect
-webSocket.onmessage = function(board) {
-    var boardData = JSON.parse(board.data);
-    id("board").innerHTML = boardData.table;
-    this.onmessage = discard;
-//    this.onmessage = highlight;
+// sequence number of the state on screen, -1 while waiting for a whole board
+var seq = -1;
+var selected = -1;
+// seq of the board the running suggestion request was made for, -1 if there is none
+var suggesting = -1;
+var suggested = [];
+
+webSocket.onmessage = function(event) {
+    var message = JSON.parse(event.data);
+    if (message.v != VERSION) {
+        // the server has been upgraded, so load the page that goes with it
+        location.reload();
+    } else if (message.type == "complete") {
+        // a superseded request may complete while the current one is still streaming
+        if (message.seq == suggesting) {
+            suggesting = -1;
+            id("suggest").disabled = false;
+        }
+    } else if (message.type == "board") {
+        showBoard(message);
+    } else if (seq < 0) {
+        // waiting for a resync
+    } else if (message.type == "delta") {
+        if (message.seq != seq + 1) {
+            resync();
+        } else {
+            applyDelta(message);
+        }
+    } else if (message.type == "suggestion") {
+        // suggestions for a board that has changed since are stale
+        if (message.seq == seq && message.seq == suggesting && message.winning) {
+            showSuggestion(message.move);
+        }
+    }
 };
 
-// discard the first peg
-var discard = function(peg) {
-    var selection = peg.data;
-    id(selection).style.backgroundColor = "#CCCCCC";
-    this.onmessage = highlight;
+function showBoard(board) {
+    id("board").innerHTML = board.table;
+    var i;
+    for (i in board.empty) {
+        peg(board.empty[i]).className = "empty";
+    }
+    suggested = [];
+    selected = -1;
+    setSelected(board.selected);
+    seq = board.seq;
 }
 
-// highlight the cell on valid selection and prepare for jump
-var highlight = function(peg) {
-    var selection = peg.data;
-    if (selection != "error") {
-        id(selection).style.backgroundColor = "green";
-        this.onmessage = jump;
+function applyDelta(delta) {
+    clearSuggestions();
+    var i;
+    for (i in delta.off) {
+        peg(delta.off[i]).className = "empty";
+    }
+    for (i in delta.on) {
+        peg(delta.on[i]).className = "on";
     }
+    setSelected(delta.selected);
+    seq = delta.seq;
 }
 
-var jump = function(jumpData) {
-    var pegs = JSON.parse(jumpData.data);
-    if (pegs.error == null) {
-        id(pegs.source).style.backgroundColor = "#CCCCCC";
-        id(pegs.jumped).style.backgroundColor = "#CCCCCC";
-        id(pegs.destination).style.backgroundColor = "black";
-    } else {
-        id(pegs.error).style.backgroundColor = "black";
+function setSelected(selection) {
+    if (selected >= 0) {
+        peg(selected).classList.remove("selected");
+    }
+    selected = selection;
+    if (selected >= 0) {
+        peg(selected).classList.add("selected");
     }
-    this.onmessage = highlight;
+}
+
+function showSuggestion(move) {
+    peg(move[0]).classList.add("start");
+    peg(move[1]).classList.add("end");
+    suggested.push(move[0], move[1]);
+}
+
+function clearSuggestions() {
+    var i;
+    for (i in suggested) {
+        peg(suggested[i]).classList.remove("start", "end");
+    }
+    suggested = [];
+}
+
+function resync() {
+    seq = -1;
+    webSocket.send("resync");
 }
 
 function select(peg) {
@@ -41,24 +96,21 @@ function select(peg) {
 }
 
 function suggest() {
-    var previousMethod = webSocket.onmessage;
-    webSocket.send("suggestion");
-    webSocket.onmessage = function(suggestion) {
-        try {
-            var data = JSON.parse(suggestion.data);
-            var i;
-            for (i in data.suggestions) {
-                id("peg" + data.suggestions[i].start).style.backgroundColor = "blue";
-                id("peg" + data.suggestions[i].end).style.backgroundColor = "red";
-            }
-        } finally {
-            this.onmessage = previousMethod;
-        }
+    if (seq < 0) {
+        return; // the suggestion would be for a board not yet shown
     }
+    // winning moves arrive one at a time until the search is complete
+    clearSuggestions();
+    id("suggest").disabled = true;
+    suggesting = seq;
+    webSocket.send("suggestion");
 }
 
-// Helper function to get an element by id
+// Helper functions to get an element by id
 function id(id) {
     return document.getElementById(id);
 }
 
+function peg(id) {
+    return document.getElementById("peg" + id);
+}
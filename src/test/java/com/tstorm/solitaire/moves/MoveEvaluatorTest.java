@@ -0,0 +1,37 @@
+package com.tstorm.solitaire.moves;
+
+import com.tstorm.solitaire.pieces.BitBoard;
+import com.tstorm.solitaire.pieces.Symmetry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+
+public class MoveEvaluatorTest {
+    /**
+     * 18 pegs with ten moves, every one of which loses.
+     */
+    private static final long LOSING = 0x1027ce86421cL;
+
+    @Before
+    @After
+    public void clearOracle() {
+        MoveEvaluator.getOracle().clear();
+    }
+
+    @Test
+    public void childrenClaimedElsewhereAreStillSearched() {
+        Search search = new Search(20 * 1000);
+        // as if another task had taken on every child and not finished any of them
+        for (Move m : BitBoard.getMoves(LOSING)) {
+            search.getVisited().add(Symmetry.canonical(BitBoard.jump(LOSING, m)));
+        }
+        MasterMoveEvaluator evaluator = new MasterMoveEvaluator(LOSING, Optional.empty(), search);
+        assertFalse(evaluator.invoke());
+        assertEquals(SolvabilityOracle.Result.LOSE, evaluator.getResult());
+        assertEquals(SolvabilityOracle.Result.LOSE, MoveEvaluator.getOracle().lookup(LOSING));
+    }
+}
@@ -0,0 +1,42 @@
+package com.tstorm.solitaire.moves;
+
+import com.tstorm.solitaire.endgame.EndgameDatabaseBuilder;
+import com.tstorm.solitaire.pieces.BitBoard;
+import com.tstorm.solitaire.pieces.Symmetry;
+import org.junit.Test;
+
+import java.util.EnumSet;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pruned positions are recorded in the oracle as proven losses, so no heuristic may ever cut
+ * a solvable position.
+ */
+public class PruningTest {
+    private static final int MAX_PEGS = 10;
+
+    @Test
+    public void neverPrunesASolvablePosition() {
+        long[] solvable = EndgameDatabaseBuilder.solvablePositions(MAX_PEGS);
+        for (Pruning.Heuristic h : Pruning.Heuristic.values()) {
+            Pruning pruning = new Pruning(EnumSet.of(h));
+            for (long key : solvable) {
+                for (int t = 0; t < Symmetry.COUNT; t++) {
+                    long pegs = Symmetry.transform(key, t);
+                    assertFalse(String.format("%s pruned solvable position %x", h, pegs), pruning.isHopeless(pegs));
+                }
+            }
+            assertEquals(0, pruning.cuts(h));
+        }
+    }
+
+    @Test
+    public void prunesAPositionOfTheWrongClass() {
+        // two pegs with an empty hole between them cannot jump, so cannot be solved
+        long pegs = BitBoard.bit(2) | BitBoard.bit(4);
+        assertTrue(BitBoard.getMoves(pegs).isEmpty());
+        Pruning pruning = new Pruning(EnumSet.allOf(Pruning.Heuristic.class));
+        assertTrue(pruning.isHopeless(pegs));
+    }
+}
@@ -0,0 +1,44 @@
+package com.tstorm.solitaire.server;
+
+import com.tstorm.solitaire.moves.Move;
+import com.tstorm.solitaire.moves.MoveEvaluator;
+import com.tstorm.solitaire.moves.Search;
+import com.tstorm.solitaire.pieces.Board;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class MasterTest {
+    /**
+     * 14 pegs, both of whose moves lose. The units of each reach the same positions, so most
+     * of them find their children claimed by another unit.
+     */
+    private static final long LOSING = 0x708492b2c000L;
+
+    @Before
+    @After
+    public void clearOracle() {
+        MoveEvaluator.getOracle().clear();
+    }
+
+    @Test
+    public void losingMovesAreDecided() {
+        Board board = new Board(LOSING);
+        List<Move> lost = new ArrayList<>();
+        Search search = new Search(20 * 1000);
+        List<Move> winning = new Master().evaluate(board, search, (move, wins) -> {
+            if (!wins) {
+                lost.add(move);
+            }
+        });
+        assertTrue(winning.isEmpty());
+        assertEquals(board.getMoves().size(), lost.size());
+        // decided, rather than left open until the deadline
+        assertTrue(search.remainingMillis() > 0);
+    }
+}
@@ -0,0 +1,111 @@
+package com.tstorm.solitaire.server;
+
+import com.tstorm.solitaire.moves.SolvabilityOracle.Result;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ResultReaderTest {
+    private SocketChannel slave;
+    private SocketChannel master;
+
+    /**
+     * Collects what the reader passes on, and throws on results if asked to.
+     */
+    private static class Recorder implements ResultReader.Listener {
+        final CountDownLatch disconnected = new CountDownLatch(1);
+        final boolean failOnResult;
+        volatile Result result;
+
+        Recorder(boolean failOnResult) {
+            this.failOnResult = failOnResult;
+        }
+
+        @Override
+        public void onResult(SocketChannel channel, int request, int unit, Result result) {
+            if (failOnResult) {
+                throw new IllegalStateException("listener failed");
+            }
+            this.result = result;
+        }
+
+        @Override
+        public void onPull(SocketChannel channel, int request, int count) {
+        }
+
+        @Override
+        public void onShare(SocketChannel channel, ByteBuffer frame) {
+        }
+
+        @Override
+        public void onHeartbeat(SocketChannel channel) {
+        }
+
+        @Override
+        public void onDisconnect(SocketChannel channel) {
+            disconnected.countDown();
+        }
+    }
+
+    @Before
+    public void connect() throws IOException {
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            slave = SocketChannel.open(server.getLocalAddress());
+            master = server.accept();
+        }
+    }
+
+    @After
+    public void close() throws IOException {
+        slave.close();
+        master.close();
+    }
+
+    private void sendResult(int result) throws IOException {
+        ByteBuffer frame = ByteBuffer.allocate(Protocol.RESULT_BYTES);
+        frame.put(Protocol.RESULT).putInt(1).putInt(0).put((byte) result);
+        frame.flip();
+        slave.write(frame);
+    }
+
+    @Test
+    public void passesResultsOn() throws Exception {
+        Recorder recorder = new Recorder(false);
+        ResultReader.start(master, recorder);
+        sendResult(Result.LOSE.ordinal());
+        slave.close();
+        assertTrue(recorder.disconnected.await(5, TimeUnit.SECONDS));
+        assertEquals(Result.LOSE, recorder.result);
+    }
+
+    @Test
+    public void anUnknownResultDropsTheSlave() throws Exception {
+        Recorder recorder = new Recorder(false);
+        ResultReader.start(master, recorder);
+        sendResult(Result.values().length);
+        assertTrue(recorder.disconnected.await(5, TimeUnit.SECONDS));
+        assertNull(recorder.result);
+        assertFalse(master.isOpen());
+    }
+
+    @Test
+    public void aFailingListenerDropsTheSlave() throws Exception {
+        Recorder recorder = new Recorder(true);
+        ResultReader.start(master, recorder);
+        sendResult(Result.WIN.ordinal());
+        assertTrue(recorder.disconnected.await(5, TimeUnit.SECONDS));
+        assertFalse(master.isOpen());
+    }
+}
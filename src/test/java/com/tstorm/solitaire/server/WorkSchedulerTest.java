@@ -0,0 +1,173 @@
+package com.tstorm.solitaire.server;
+
+import com.tstorm.solitaire.moves.Move;
+import com.tstorm.solitaire.moves.MoveEvaluator;
+import com.tstorm.solitaire.moves.SolvabilityOracle.Result;
+import com.tstorm.solitaire.pieces.BitBoard;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class WorkSchedulerTest {
+    private static final long OPENING = BitBoard.HOLES & ~BitBoard.bit(24);
+
+    @Before
+    @After
+    public void clearOracle() {
+        MoveEvaluator.getOracle().clear();
+    }
+
+    private static WorkScheduler scheduler(long pegs, WorkScheduler.Mode mode, int nodes) {
+        return new WorkScheduler(pegs, BitBoard.getMoves(pegs), mode, nodes);
+    }
+
+    /**
+     * A position a few jumps into the game, whose moves are not all symmetric.
+     */
+    private static long midgame() {
+        long pegs = OPENING;
+        for (int i = 0; i < 3; i++) {
+            List<Move> moves = BitBoard.getMoves(pegs);
+            pegs = BitBoard.jump(pegs, moves.get(moves.size() - 1));
+        }
+        return pegs;
+    }
+
+    private static List<WorkScheduler.Assignment> assignAll(WorkScheduler scheduler, int node) {
+        scheduler.request(node, scheduler.size());
+        return scheduler.assign();
+    }
+
+    @Test
+    public void symmetricMovesShareTheirUnits() {
+        WorkScheduler scheduler = scheduler(OPENING, WorkScheduler.Mode.WORK_STEALING, 1);
+        List<WorkScheduler.Assignment> assignments = assignAll(scheduler, 0);
+        assertEquals(scheduler.size(), assignments.size());
+
+        scheduler.complete(0, assignments.get(0).unit, Result.WIN);
+        // the opening's four moves are one group, decided by any of its units
+        assertTrue(scheduler.isFinished());
+        assertEquals(4, scheduler.winningMoves().size());
+        List<WorkScheduler.Decision> decided = scheduler.decided();
+        assertEquals(4, decided.size());
+        for (WorkScheduler.Decision d : decided) {
+            assertTrue(d.winning);
+        }
+        assertTrue(scheduler.decided().isEmpty());
+    }
+
+    @Test
+    public void movesLoseOnceEveryUnitHasLost() {
+        WorkScheduler scheduler = scheduler(midgame(), WorkScheduler.Mode.WORK_STEALING, 1);
+        List<WorkScheduler.Assignment> assignments = assignAll(scheduler, 0);
+        for (WorkScheduler.Assignment a : assignments) {
+            assertFalse(scheduler.isFinished());
+            scheduler.complete(0, a.unit, Result.LOSE);
+        }
+        assertTrue(scheduler.isFinished());
+        assertTrue(scheduler.winningMoves().isEmpty());
+        for (WorkScheduler.Decision d : scheduler.decided()) {
+            assertFalse(d.winning);
+        }
+    }
+
+    @Test
+    public void stealingRunsAtMostTwoCopiesOfAUnit() {
+        WorkScheduler scheduler = scheduler(midgame(), WorkScheduler.Mode.WORK_STEALING, 3);
+        assertEquals(scheduler.size(), assignAll(scheduler, 0).size());
+        // the queue is empty, so an idle node takes second copies of running units
+        List<WorkScheduler.Assignment> copies = assignAll(scheduler, 1);
+        assertEquals(scheduler.size(), copies.size());
+        for (WorkScheduler.Assignment a : copies) {
+            assertEquals(1, a.node);
+        }
+        assertTrue(assignAll(scheduler, 2).isEmpty());
+
+        // the first copy to finish decides the unit and the second is ignored
+        WorkScheduler.Assignment unit = copies.get(0);
+        scheduler.complete(1, unit.unit, Result.LOSE);
+        scheduler.complete(0, unit.unit, Result.WIN);
+        assertTrue(scheduler.winningMoves().isEmpty());
+    }
+
+    @Test
+    public void unknownResultsAreRetriedThenGivenUp() {
+        WorkScheduler scheduler = scheduler(OPENING, WorkScheduler.Mode.WORK_STEALING, 1);
+        List<WorkScheduler.Assignment> assignments = assignAll(scheduler, 0);
+        WorkScheduler.Assignment first = assignments.get(0);
+        assertFalse(first.retry);
+        for (WorkScheduler.Assignment a : assignments.subList(1, assignments.size())) {
+            scheduler.complete(0, a.unit, Result.LOSE);
+        }
+        scheduler.complete(0, first.unit, Result.UNKNOWN);
+        scheduler.request(0, 1);
+        List<WorkScheduler.Assignment> again = scheduler.assign();
+        assertEquals(1, again.size());
+        assertEquals(first.unit, again.get(0).unit);
+        assertTrue(again.get(0).retry);
+
+        scheduler.complete(0, first.unit, Result.UNKNOWN);
+        scheduler.request(0, 1);
+        scheduler.complete(0, assertOne(scheduler.assign()).unit, Result.UNKNOWN);
+        // given up: the search ends, but the move was never shown to lose
+        assertTrue(scheduler.isFinished());
+        assertTrue(scheduler.decided().isEmpty());
+    }
+
+    private static WorkScheduler.Assignment assertOne(List<WorkScheduler.Assignment> assignments) {
+        assertEquals(1, assignments.size());
+        return assignments.get(0);
+    }
+
+    @Test
+    public void failedNodesHandTheirUnitsBack() {
+        WorkScheduler scheduler = scheduler(midgame(), WorkScheduler.Mode.WORK_STEALING, 2);
+        List<WorkScheduler.Assignment> lost = assignAll(scheduler, 1);
+        assertEquals(lost.size(), scheduler.fail(1));
+        // a failed node asks for nothing more, and its late results do not count
+        assertTrue(assignAll(scheduler, 1).isEmpty());
+        scheduler.complete(1, lost.get(0).unit, Result.WIN);
+        assertTrue(scheduler.winningMoves().isEmpty());
+
+        Set<Integer> requeued = new HashSet<>();
+        for (WorkScheduler.Assignment a : assignAll(scheduler, 0)) {
+            assertEquals(0, a.node);
+            requeued.add(a.unit);
+        }
+        assertEquals(lost.size(), requeued.size());
+    }
+
+    @Test
+    public void roundRobinDealsEachUnitOnce() {
+        WorkScheduler scheduler = scheduler(midgame(), WorkScheduler.Mode.ROUND_ROBIN, 2);
+        Set<Integer> units = new HashSet<>();
+        for (int node = 0; node < 2; node++) {
+            for (WorkScheduler.Assignment a : assignAll(scheduler, node)) {
+                assertTrue(units.add(a.unit));
+            }
+        }
+        assertEquals(scheduler.size(), units.size());
+        // round robin never copies work
+        assertTrue(assignAll(scheduler, 0).isEmpty());
+    }
+
+    @Test
+    public void theOracleAloneCanFinishASearch() {
+        long pegs = midgame();
+        WorkScheduler first = scheduler(pegs, WorkScheduler.Mode.WORK_STEALING, 1);
+        for (WorkScheduler.Assignment a : assignAll(first, 0)) {
+            MoveEvaluator.getOracle().record(a.pegs, false);
+        }
+        WorkScheduler scheduler = scheduler(pegs, WorkScheduler.Mode.WORK_STEALING, 1);
+        assertFalse(scheduler.isFinished());
+        assertTrue(assignAll(scheduler, 0).isEmpty());
+        assertTrue(scheduler.isFinished());
+        assertEquals(BitBoard.getMoves(pegs).size(), scheduler.decided().size());
+    }
+}